@@ -13,6 +13,24 @@ import java.lang.annotation.Target;
 @Target(ElementType.TYPE)
 public @interface Api {
 
+  /**
+   * 单例实例的持有方式
+   */
+  enum Retain {
+    /**
+     * 强引用，进程存活期间一直保留
+     */
+    STRONG,
+    /**
+     * 软引用，内存不足时由虚拟机回收
+     */
+    SOFT,
+    /**
+     * 强引用，收到内存紧张信号时释放
+     */
+    RECLAIMABLE
+  }
+
   /**
    * 是否单例模式，且必须存在静态INSTANCE引用，可以和kotlin单例对象保持兼容
    */
@@ -23,4 +41,33 @@ public @interface Api {
    */
   boolean dynamic() default false;
 
+  /**
+   * 是否在启动注册完成后提前初始化，只对单例有效，按照构造依赖的拓扑顺序并行创建
+   */
+  boolean eager() default false;
+
+  /**
+   * 作用域名称，非单例时有效；在名称匹配的最近一级{@code ComponentScope}中只有一个实例，
+   * 没有匹配的作用域时属于请求的作用域，作用域关闭时释放；为空表示不受作用域管理
+   */
+  String scope() default "";
+
+  /**
+   * 单例实例的持有方式，只对单例有效；非强引用的单例被释放后在下次获取时重建，
+   * 延迟代理每次都从注册表获取，不会持有旧实例
+   */
+  Retain retain() default Retain.STRONG;
+
+  /**
+   * 实例池容量，只对没有作用域的非单例有效，0表示不池化；
+   * 获取时优先从池中取出，使用完毕后通过{@code Componentization.recycle}放回
+   */
+  int pool() default 0;
+
+  /**
+   * 是否多实现模式，允许多个Service实现，通过{@code Componentization.getAll}按{@link Service#priority()}
+   * 从高到低获取所有实现；{@code Componentization.get}返回优先级最高的实现
+   */
+  boolean multiple() default false;
+
 }
@@ -25,4 +25,16 @@ import java.lang.annotation.Target;
    */
   String[] api();
 
+  /**
+   * 服务构造时依赖的接口类型列表，包括构造器参数和非延迟的注入字段
+   * @return {@link Class#getName()}
+   */
+  String[] dependency() default {};
+
+  /**
+   * 接口类型列表中的多实现接口，插件允许这些接口有多个实现
+   * @return {@link Class#getName()}
+   */
+  String[] multiple() default {};
+
 }
@@ -12,4 +12,10 @@ import java.lang.annotation.Target;
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.TYPE)
 public @interface Service {
+
+  /**
+   * 实现多实现api时的优先级，越大越靠前，相同优先级按注册顺序
+   */
+  int priority() default 0;
+
 }
@@ -3,11 +3,13 @@ package com.bhb.android.plugin.componentization
 import com.android.build.gradle.AppExtension
 import com.android.build.gradle.BaseExtension
 import com.android.build.gradle.LibraryExtension
+import com.android.build.gradle.tasks.MergeSourceSetFolders
 import com.bhb.android.plugin.componentization.ComponentizationConfig.PROPERTY_MODULE
 import org.gradle.api.Plugin
 import org.gradle.api.Project
 import org.gradle.api.Task
 import org.jetbrains.kotlin.gradle.plugin.KaptExtension
+import java.io.File
 import java.util.*
 
 /**
@@ -21,9 +23,11 @@ class ComponentizationPlugin: Plugin<Project> {
     private const val OPTION_MODULE_NAME = "option.module.name"
     private const val OPTION_ROOT_MODULE_DIR = "option.root.module.dir"
     private const val OPTION_RESOURCES_DIR = "option.resources.dir"
+    private const val OPTION_INLINE_LAZY = "option.inline.lazy"
     private const val RESOURCES_OUTPUT_PREFIX = "build/intermediates/java_res"
 
     private const val REGISTER_FILE_NAME = "module-register.properties"
+    private const val REGISTRY_FILE_NAME = "module-register.bin"
   }
 
   private lateinit var config: ComponentizationConfig
@@ -56,6 +60,11 @@ class ComponentizationPlugin: Plugin<Project> {
       return
     }
 
+    project.plugins.withId("com.android.application") {
+      // 二进制注册表需要以不压缩的方式打包，运行时才能直接映射
+      project.requireAndroidExt().aaptOptions.noCompress(REGISTRY_FILE_NAME)
+    }
+
     project.afterEvaluate {
       it.requireAndroidExt().apply {
         println("Project[${it.name}].registerTransform(${config})")
@@ -90,6 +99,16 @@ class ComponentizationPlugin: Plugin<Project> {
               invalidate()
             }
           }
+          // 注册合并assets任务，二进制注册表在合并完成后写入
+          (it.tasks.findByName("merge${buildName.capitalize()}Assets") as? MergeSourceSetFolders)?.apply {
+            val assetsDir = outputDir.get().asFile
+            doLast { _ ->
+              migrateRegistryFile2Assets(it, assetsDir)
+            }
+            if (!checkRegistryAssetValidate(it, assetsDir)) {
+              invalidate()
+            }
+          }
         }
       }
     }
@@ -137,6 +156,38 @@ class ComponentizationPlugin: Plugin<Project> {
     }
   }
 
+  /**
+   * 合并后的assets中的二进制注册表是否比注册属性文件新
+   */
+  private fun checkRegistryAssetValidate(project: Project, assetsDir: File): Boolean {
+    project.rootProject.file(config.resourcesDir).resolve(REGISTER_FILE_NAME).let { rootFile ->
+      if (!rootFile.exists()) {
+        return true
+      }
+      assetsDir.resolve(REGISTRY_FILE_NAME).let { assetFile ->
+        return assetFile.exists() && assetFile.lastModified() >= rootFile.lastModified()
+      }
+    }
+  }
+
+  /**
+   * 由注册属性文件生成二进制注册表到合并后的assets目录，打包时不压缩，运行时直接内存映射
+   */
+  private fun migrateRegistryFile2Assets(project: Project, assetsDir: File) {
+    project.rootProject.file(config.resourcesDir).resolve(REGISTER_FILE_NAME).let { rootFile ->
+      if (!rootFile.exists()) {
+        println("migrateRegistry: $rootFile is not exists...")
+        return@let
+      }
+      assetsDir.resolve(REGISTRY_FILE_NAME).let { assetFile ->
+        writeRegistryFile(Properties().apply {
+          rootFile.inputStream().use { load(it) }
+        }, assetFile)
+        println("migrateRegistry: $rootFile to $assetFile ...")
+      }
+    }
+  }
+
   /**
    * 检查注册文件的内容完整性，如果当前模块缺失，则启动重编译过程
    */
@@ -170,7 +221,8 @@ class ComponentizationPlugin: Plugin<Project> {
             OPTION_DEBUG_MODE to config.debugMode.toString(),
             OPTION_MODULE_NAME to project.name,
             OPTION_ROOT_MODULE_DIR to project.rootProject.projectDir.absolutePath,
-            OPTION_RESOURCES_DIR to config.resourcesDir)
+            OPTION_RESOURCES_DIR to config.resourcesDir,
+            OPTION_INLINE_LAZY to config.inlineLazy.toString())
     if (config.debugMode) {
       println("Project[${project.name}].injectCompileOptions--->${options}")
     }
@@ -1,10 +1,12 @@
 package com.bhb.android.componentization.compiler;
 
 import com.bhb.android.componentization.annotation.Api;
+import com.bhb.android.componentization.annotation.AutoWired;
 import com.bhb.android.componentization.annotation.Service;
 import com.google.auto.common.SuperficialValidation;
 import com.google.auto.service.AutoService;
 import com.squareup.javapoet.AnnotationSpec;
+import com.squareup.javapoet.ArrayTypeName;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.FieldSpec;
@@ -32,13 +34,16 @@ import java.io.OutputStream;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import org.jetbrains.annotations.Nullable;
 import javax.annotation.processing.AbstractProcessor;
@@ -51,9 +56,15 @@ import javax.annotation.processing.SupportedSourceVersion;
 import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
 import javax.lang.model.element.Modifier;
 import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.ExecutableType;
 import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Types;
 import javax.tools.Diagnostic;
 
@@ -69,6 +80,20 @@ public final class ComponentizationProcessor extends AbstractProcessor {
   private static final String PACKAGE_SPACE = "com.bhb.android.componentization";
   private static final String ComponentRegister_SUFFIX = "_Register";
   private static final String LazyDelegate_SUFFIX = "_Lazy";
+  private static final String ServiceFactory_SUFFIX = "_Factory";
+  private static final String Dynamic_SUFFIX = "_Dynamic";
+  private static final String Components_SUFFIX = "Components";
+  private static final String Accessor_SUFFIX = "_Accessor";
+  private static final String Injector_SUFFIX = "_Injector";
+  private static final String Broadcast_SUFFIX = "_Broadcast";
+  /**
+   * 注册属性中模块api索引的键后缀，值为模块中service实现的api列表
+   */
+  private static final String Property_APIS_SUFFIX = "@apis";
+  /**
+   * 注册属性中模块是否包含提前初始化api的键后缀
+   */
+  private static final String Property_EAGER_SUFFIX = "@eager";
   private static final String LazyDelegate_Field_DELEGATE_SUFFIX = "Delegate";
   private static final TypeName ArrayListType = TypeName.get(ArrayList.class);
   private static final ClassName ComponentRegisterType = ClassName.get(
@@ -81,6 +106,14 @@ public final class ComponentizationProcessor extends AbstractProcessor {
           PACKAGE_SPACE, "LazyDelegate");
   private static final ClassName LazyDelegateImplType = ClassName.get(
           PACKAGE_SPACE, "LazyDelegateImpl");
+  private static final ClassName ServiceFactoryType = ClassName.get(
+          PACKAGE_SPACE, "ServiceFactory");
+  private static final ClassName BroadcastDispatcherType = ClassName.get(
+          PACKAGE_SPACE, "BroadcastDispatcher");
+  private static final ClassName ComponentizationType = ClassName.get(
+          PACKAGE_SPACE, "Componentization");
+  private static final ClassName ComponentExceptionType = ClassName.get(
+          PACKAGE_SPACE, "ComponentException");
   private static final ClassName AnnotationMetaType = ClassName.get(
           PACKAGE_SPACE + ".annotation", "Meta");
 
@@ -100,6 +133,10 @@ public final class ComponentizationProcessor extends AbstractProcessor {
    * 资源目录，相对于{@link #OPTION_ROOT_MODULE_DIR}
    */
   private static final String OPTION_RESOURCES_DIR = "option.resources.dir";
+  /**
+   * 是否内联延迟注入，值为boolean，开启时延迟字段由插件改写为读取时解析，不由注入类注入
+   */
+  private static final String OPTION_INLINE_LAZY = "option.inline.lazy";
 
   private Types typeUtils;
   private Filer filer;
@@ -107,10 +144,14 @@ public final class ComponentizationProcessor extends AbstractProcessor {
   private Messager logger;
   private Map<String, String> options;
   private Set<String> registers = new HashSet<>();
+  private Set<String> registerApis = new LinkedHashSet<>();
+  private boolean hasEagerApi;
   private boolean debugEnabled;
+  private boolean inlineLazy;
   private String moduleName;
   private String rootDirectory;
   private String resourcesDirectory;
+  private boolean componentsGenerated;
 
   @Override
   public synchronized void init(ProcessingEnvironment env) {
@@ -121,6 +162,8 @@ public final class ComponentizationProcessor extends AbstractProcessor {
     filer = env.getFiler();
     debugEnabled = options.containsKey(OPTION_DEBUG_MODE)
             && Boolean.parseBoolean(options.get(OPTION_DEBUG_MODE));
+    inlineLazy = options.containsKey(OPTION_INLINE_LAZY)
+            && Boolean.parseBoolean(options.get(OPTION_INLINE_LAZY));
     moduleName = options.get(OPTION_MODULE_NAME);
     rootDirectory = options.get(OPTION_ROOT_MODULE_DIR);
     resourcesDirectory = options.get(OPTION_RESOURCES_DIR);
@@ -129,7 +172,8 @@ public final class ComponentizationProcessor extends AbstractProcessor {
                     + "debuggable: " + debugEnabled
                     + ", moduleName: " + moduleName
                     + ", rootDirectory: " + rootDirectory
-                    + ", resourcesDirectory: " + resourcesDirectory + "}\n ");
+                    + ", resourcesDirectory: " + resourcesDirectory
+                    + ", inlineLazy: " + inlineLazy + "}\n ");
     try {
       generateRegisterHolder();
     } catch (Exception e) {
@@ -166,7 +210,9 @@ public final class ComponentizationProcessor extends AbstractProcessor {
       options.add(OPTION_ROOT_MODULE_DIR);
       options.add(OPTION_MODULE_NAME);
       options.add(OPTION_RESOURCES_DIR);
-      options.add(IncrementalAnnotationProcessorType.ISOLATING.getProcessorOption());
+      options.add(OPTION_INLINE_LAZY);
+      // 模块静态访问类由所有api聚合生成，增量编译时需要重新处理全部api，不能声明为隔离模式
+      options.add(IncrementalAnnotationProcessorType.AGGREGATING.getProcessorOption());
     }
     return options;
   }
@@ -182,6 +228,8 @@ public final class ComponentizationProcessor extends AbstractProcessor {
   private Set<Class<? extends Annotation>> getSupportedAnnotations() {
     Set<Class<? extends Annotation>> annotations = new LinkedHashSet<>();
     annotations.add(Service.class);
+    annotations.add(Api.class);
+    annotations.add(AutoWired.class);
     return annotations;
   }
 
@@ -194,7 +242,8 @@ public final class ComponentizationProcessor extends AbstractProcessor {
         continue;
       }
       try {
-        generateRegisterClassFile(element);
+        boolean hasFactory = generateFactoryClassFile(element);
+        generateRegisterClassFile(element, hasFactory);
         generateLazyClassFile(element);
       } catch (Exception e) {
         e.printStackTrace();
@@ -202,6 +251,65 @@ public final class ComponentizationProcessor extends AbstractProcessor {
         return false;
       }
     }
+    List<Element> componentsApis = new ArrayList<>();
+    for (Element element : env.getElementsAnnotatedWith(Api.class)) {
+      if (element.getKind() != ElementKind.INTERFACE) {
+        continue;
+      }
+      if (!SuperficialValidation.validateElement(element)) {
+        logger.printMessage(Diagnostic.Kind.WARNING,
+                "不合法元素：" + element.getSimpleName().toString());
+        continue;
+      }
+      try {
+        if (isAccessible(element) && isApiType((Type) element.asType())) {
+          generateAccessorClassFile(element);
+          componentsApis.add(element);
+        }
+        if (element.getAnnotation(Api.class).dynamic()) {
+          generateDynamicClassFile(element);
+        }
+        if (element.getAnnotation(Api.class).multiple()) {
+          generateBroadcastClassFile(element);
+        }
+      } catch (Exception e) {
+        e.printStackTrace();
+        logger.printMessage(Diagnostic.Kind.ERROR, e.getMessage());
+        return false;
+      }
+    }
+    if (!componentsGenerated && !componentsApis.isEmpty()) {
+      try {
+        generateComponentsClassFile(componentsApis);
+        componentsGenerated = true;
+      } catch (Exception e) {
+        e.printStackTrace();
+        logger.printMessage(Diagnostic.Kind.ERROR, e.getMessage());
+        return false;
+      }
+    }
+    Map<TypeElement, List<VariableElement>> autoWiredFields = new LinkedHashMap<>();
+    for (Element element : env.getElementsAnnotatedWith(AutoWired.class)) {
+      if (!isInjectable(element)) {
+        continue;
+      }
+      TypeElement host = (TypeElement) element.getEnclosingElement();
+      List<VariableElement> fields = autoWiredFields.get(host);
+      if (null == fields) {
+        fields = new ArrayList<>();
+        autoWiredFields.put(host, fields);
+      }
+      fields.add((VariableElement) element);
+    }
+    for (Map.Entry<TypeElement, List<VariableElement>> entry : autoWiredFields.entrySet()) {
+      try {
+        generateInjectorClassFile(entry.getKey(), entry.getValue());
+      } catch (Exception e) {
+        e.printStackTrace();
+        logger.printMessage(Diagnostic.Kind.ERROR, e.getMessage());
+        return false;
+      }
+    }
     try {
       generateRegisterProperty();
     } catch (Exception e) {
@@ -213,20 +321,26 @@ public final class ComponentizationProcessor extends AbstractProcessor {
 
   /**
    * 生成注册类文件
-   * @param element 元素
+   * @param element    元素
+   * @param hasFactory 是否生成了工厂类
    * @throws IOException 写入异常
    */
-  private void generateRegisterClassFile(Element element) throws IOException {
+  private void generateRegisterClassFile(Element element, boolean hasFactory) throws IOException {
     TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(
             element.getSimpleName() + ComponentRegister_SUFFIX)
             .addModifiers(Modifier.FINAL)
             .addSuperinterface(ComponentRegisterType)
-            .addMethod(buildRegisterMethod(element))
+            .addMethod(buildRegisterMethod(element, hasFactory))
             .addAnnotation(buildRegisterMeta(element));
     JavaFile file = JavaFile.builder(PACKAGE_SPACE, typeBuilder.build())
             .addFileComment("此文件为自动生成，用于组件化辅助注册").build();
     file.writeTo(filer);
     registers.add(file.packageName + "." + file.typeSpec.name);
+    for (Type api : getApiTypes(element)) {
+      registerApis.add(getRawType(TypeName.get(api)).toString());
+      Api annotation = api.asElement().getAnnotation(Api.class);
+      hasEagerApi |= annotation.singleton() && annotation.eager();
+    }
   }
 
   /**
@@ -267,18 +381,11 @@ public final class ComponentizationProcessor extends AbstractProcessor {
   }
 
   /**
-   * 生成模块注册类相关属性缓存，用做增量编译
+   * 生成模块注册类相关属性缓存，用做增量编译；同时写入模块的api索引，运行时按需载入模块
    */
   private synchronized void generateRegisterProperty() throws Exception {
-    StringBuilder classesBuilder = new StringBuilder();
-    Iterator<String> iterator = registers.iterator();
-    while (iterator.hasNext()) {
-      String register = iterator.next();
-      classesBuilder.append(register);
-      if (iterator.hasNext()) {
-        classesBuilder.append(",");
-      }
-    }
+    String classes = String.join(",", registers);
+    String apis = String.join(",", registerApis);
     Properties properties = new Properties();
     File propDir = new File(rootDirectory, resourcesDirectory);
     File propFile = new File(propDir, "module-register.properties");
@@ -298,10 +405,12 @@ public final class ComponentizationProcessor extends AbstractProcessor {
     lockFile.createNewFile();
     try (InputStream is = new FileInputStream(propFile)) {
       properties.load(is);
-      properties.put(moduleName, classesBuilder.toString());
+      properties.put(moduleName, classes);
+      properties.put(moduleName + Property_APIS_SUFFIX, apis);
+      properties.put(moduleName + Property_EAGER_SUFFIX, String.valueOf(hasEagerApi));
       if (debugEnabled) {
         logger.printMessage(Diagnostic.Kind.NOTE,
-                "写入属性--->" + moduleName + ": " + classesBuilder + "\n ");
+                "写入属性--->" + moduleName + ": " + classes + "\n ");
       }
       try (OutputStream writer = new FileOutputStream(propFile)) {
         properties.store(writer, "module registers");
@@ -331,9 +440,67 @@ public final class ComponentizationProcessor extends AbstractProcessor {
     }
     coder.add("}");
     builder.addMember("api", coder.build());
+    // 添加构造依赖描述，插件据此检查循环依赖
+    List<TypeName> dependencies = getDependencies(element);
+    if (!dependencies.isEmpty()) {
+      coder = CodeBlock.builder();
+      coder.add("{");
+      for (int i = 0, len = dependencies.size(); i < len; i++) {
+        coder.add("$S", dependencies.get(i).toString());
+        if (i < len - 1) {
+          coder.add(", ");
+        }
+      }
+      coder.add("}");
+      builder.addMember("dependency", coder.build());
+    }
+    // 添加多实现接口描述，插件据此放开重复实现检查
+    List<String> multiples = new ArrayList<>();
+    for (Type multiple : apiTypes) {
+      if (multiple.asElement().getAnnotation(Api.class).multiple()) {
+        multiples.add(getRawType(TypeName.get(multiple)).toString());
+      }
+    }
+    if (!multiples.isEmpty()) {
+      coder = CodeBlock.builder();
+      coder.add("{");
+      for (int i = 0, len = multiples.size(); i < len; i++) {
+        coder.add("$S", multiples.get(i));
+        if (i < len - 1) {
+          coder.add(", ");
+        }
+      }
+      coder.add("}");
+      builder.addMember("multiple", coder.build());
+    }
     return builder.build();
   }
 
+  /**
+   * 获取Service构造时依赖的api，包括工厂构造器参数和非延迟、非静态的注入字段
+   * @param element Service元素
+   * @return 去重后的api原始类型
+   */
+  private List<TypeName> getDependencies(Element element) {
+    Set<TypeName> dependencies = new LinkedHashSet<>();
+    Symbol.MethodSymbol constructor = getFactoryConstructor(element);
+    if (null != constructor) {
+      for (Symbol.VarSymbol param : constructor.getParameters()) {
+        dependencies.add(getRawType(TypeName.get(param.type)));
+      }
+    }
+    for (Element member : element.getEnclosedElements()) {
+      AutoWired autoWired = member.getAnnotation(AutoWired.class);
+      if (member.getKind() != ElementKind.FIELD || null == autoWired || autoWired.lazy()
+              || member.getModifiers().contains(Modifier.STATIC)
+              || !isApiType((Type) member.asType())) {
+        continue;
+      }
+      dependencies.add(getRawType(TypeName.get(member.asType())));
+    }
+    return new ArrayList<>(dependencies);
+  }
+
   /**
    * 获取Service中代表的所有实现接口
    * @param element Service元素
@@ -388,7 +555,7 @@ public final class ComponentizationProcessor extends AbstractProcessor {
     return interfaces;
   }
 
-  private MethodSpec buildRegisterMethod(Element element) {
+  private MethodSpec buildRegisterMethod(Element element, boolean hasFactory) {
     MethodSpec.Builder builder = MethodSpec.methodBuilder("register")
             .addAnnotation(Override.class)
             .addModifiers(Modifier.PUBLIC)
@@ -404,11 +571,156 @@ public final class ComponentizationProcessor extends AbstractProcessor {
       coder.addStatement("apis.add($T.class)", getRawType(typeName));
     }
     typeName = TypeName.get(serviceType);
+    List<TypeName> dependencies = getDependencies(element);
+    if (!dependencies.isEmpty()) {
+      coder.addStatement("final $T<Class<? extends $T>> dependencies = new $T<>($L)",
+              ArrayListType, APIType, ArrayListType, dependencies.size());
+      for (TypeName dependency : dependencies) {
+        coder.addStatement("dependencies.add($T.class)", dependency);
+      }
+    }
     builder.addCode(coder.build());
-    builder.addStatement("return new $T(apis, $T.class)", RegisterItemType, getRawType(typeName));
+    int priority = element.getAnnotation(Service.class).priority();
+    if (0 != priority) {
+      builder.addStatement("return new $T(apis, $T.class, $L, $L, $L)",
+              RegisterItemType, getRawType(typeName),
+              hasFactory ? CodeBlock.of("new $T()", ClassName.get(PACKAGE_SPACE,
+                      element.getSimpleName() + ServiceFactory_SUFFIX)) : CodeBlock.of("null"),
+              dependencies.isEmpty() ? CodeBlock.of("$T.<Class<? extends $T>>emptyList()",
+                      Collections.class, APIType) : CodeBlock.of("dependencies"),
+              priority);
+    } else if (!dependencies.isEmpty()) {
+      if (hasFactory) {
+        builder.addStatement("return new $T(apis, $T.class, new $T(), dependencies)",
+                RegisterItemType, getRawType(typeName), ClassName.get(PACKAGE_SPACE,
+                        element.getSimpleName() + ServiceFactory_SUFFIX));
+      } else {
+        builder.addStatement("return new $T(apis, $T.class, null, dependencies)",
+                RegisterItemType, getRawType(typeName));
+      }
+    } else if (hasFactory) {
+      builder.addStatement("return new $T(apis, $T.class, new $T())",
+              RegisterItemType, getRawType(typeName), ClassName.get(PACKAGE_SPACE,
+                      element.getSimpleName() + ServiceFactory_SUFFIX));
+    } else {
+      builder.addStatement("return new $T(apis, $T.class)",
+              RegisterItemType, getRawType(typeName));
+    }
     return builder.build();
   }
 
+  /**
+   * 生成Service工厂类，直接调用构造器创建实例，构造参数中的API依赖通过组件获取后传入
+   * @param element Service元素
+   * @return 是否生成了工厂类，没有可注入的公开构造器时不生成，运行时退化为反射构造
+   * @throws IOException 写入异常
+   */
+  private boolean generateFactoryClassFile(Element element) throws IOException {
+    Symbol.MethodSymbol constructor = getFactoryConstructor(element);
+    if (null == constructor) {
+      return false;
+    }
+    TypeName serviceTypeName = getRawType(TypeName.get(((Symbol.ClassSymbol) element).asType()));
+    CodeBlock.Builder coder = CodeBlock.builder();
+    coder.add("return new $T(", serviceTypeName);
+    Iterator<Symbol.VarSymbol> paramIterator = constructor.getParameters().iterator();
+    while (paramIterator.hasNext()) {
+      coder.add("$T.get($T.class)", ComponentizationType,
+              getRawType(TypeName.get(paramIterator.next().type)));
+      if (paramIterator.hasNext()) {
+        coder.add(", ");
+      }
+    }
+    coder.addStatement(")");
+    MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder("create")
+            .addAnnotation(Override.class)
+            .addModifiers(Modifier.PUBLIC)
+            .addException(ComponentExceptionType)
+            .returns(serviceTypeName)
+            .addCode(coder.build());
+    if (!constructor.getParameters().isEmpty()) {
+      methodBuilder.addAnnotation(AnnotationSpec.builder(SuppressWarnings.class)
+              .addMember("value", "$S", "unchecked").build());
+    }
+    TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(
+            element.getSimpleName() + ServiceFactory_SUFFIX)
+            .addModifiers(Modifier.FINAL)
+            .addSuperinterface(ParameterizedTypeName.get(ServiceFactoryType, serviceTypeName))
+            .addMethod(methodBuilder.build());
+    JavaFile.builder(PACKAGE_SPACE, typeBuilder.build())
+            .addFileComment("此文件为自动生成，用于组件化实例创建")
+            .build()
+            .writeTo(filer);
+    return true;
+  }
+
+  /**
+   * 查找可用于工厂注入的构造器：公开、不声明异常、参数全部为API接口，多个时选择参数最多的
+   * @param element Service元素
+   * @return 构造器，kotlin object或者不可访问的Service返回null
+   */
+  private @Nullable Symbol.MethodSymbol getFactoryConstructor(Element element) {
+    Set<Modifier> modifiers = element.getModifiers();
+    if (!isAccessible(element) || modifiers.contains(Modifier.ABSTRACT)) {
+      return null;
+    }
+    if (element.getEnclosingElement().getKind() != ElementKind.PACKAGE
+            && !modifiers.contains(Modifier.STATIC)) {
+      return null;
+    }
+    Symbol.MethodSymbol candidate = null;
+    for (Element member : element.getEnclosedElements()) {
+      if (member.getKind() != ElementKind.CONSTRUCTOR
+              || !member.getModifiers().contains(Modifier.PUBLIC)) {
+        continue;
+      }
+      Symbol.MethodSymbol constructor = (Symbol.MethodSymbol) member;
+      if (!constructor.getThrownTypes().isEmpty()) {
+        continue;
+      }
+      boolean injectable = true;
+      for (Symbol.VarSymbol param : constructor.getParameters()) {
+        if (!isApiType(param.type)) {
+          injectable = false;
+          break;
+        }
+      }
+      if (injectable && (null == candidate
+              || constructor.getParameters().size() > candidate.getParameters().size())) {
+        candidate = constructor;
+      }
+    }
+    return candidate;
+  }
+
+  /**
+   * 类型及其所有外部类是否都是公开的，生成代码位于固定包中，只能访问公开类型
+   */
+  private boolean isAccessible(Element element) {
+    while (null != element && element.getKind() != ElementKind.PACKAGE) {
+      if (!element.getModifiers().contains(Modifier.PUBLIC)) {
+        return false;
+      }
+      element = element.getEnclosingElement();
+    }
+    return true;
+  }
+
+  /**
+   * 是否被Api注解修饰的API接口类型
+   */
+  private boolean isApiType(Type type) {
+    if (!type.isInterface() || null == type.asElement().getAnnotation(Api.class)) {
+      return false;
+    }
+    for (Type itf : getAllInterfaces(type)) {
+      if (APIType.toString().equals(getRawType(TypeName.get(itf)).toString())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   /**
    * 生成懒初始化代理类
    * @param element Service元素
@@ -433,7 +745,8 @@ public final class ComponentizationProcessor extends AbstractProcessor {
       FieldSpec.Builder fieldBuilder = FieldSpec.builder(
               delegateType, fieldName)
               .addModifiers(Modifier.PRIVATE)
-              .initializer("new $T<$T>() {}", LazyDelegateImplType, apiTypeName);
+              .initializer("new $T<$T>($T.class)",
+                      LazyDelegateImplType, apiTypeName, getRawType(apiTypeName));
       typeBuilder.addField(fieldBuilder.build());
       for (Type intf : interfaces) {
         for (MethodSpec method : generateMethod(serviceType, intf, fieldName)) {
@@ -449,6 +762,427 @@ public final class ComponentizationProcessor extends AbstractProcessor {
             .writeTo(filer);
   }
 
+  /**
+   * 生成动态api的空实现类，没有Service实现时代替动态代理，所有方法返回类型对应的默认值
+   * @param element 被@Api(dynamic = true)修饰的接口元素
+   * @throws IOException 写入异常
+   */
+  private void generateDynamicClassFile(Element element) throws IOException {
+    if (!isAccessible(element)) {
+      logger.printMessage(Diagnostic.Kind.WARNING,
+              element.toString() + "：非公开的动态api接口无法生成空实现，运行时将使用动态代理");
+      return;
+    }
+    TypeElement apiElement = (TypeElement) element;
+    DeclaredType apiType = (DeclaredType) apiElement.asType();
+    ClassName dynamicClassName = getApiGeneratedClassName(element, Dynamic_SUFFIX);
+    TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(dynamicClassName.simpleName())
+            .addModifiers(Modifier.FINAL)
+            .addSuperinterface(TypeName.get(apiType));
+    for (TypeParameterElement typeParameter : apiElement.getTypeParameters()) {
+      typeBuilder.addTypeVariable(TypeVariableName.get(typeParameter));
+    }
+    // 子接口在前，重复的方法签名只保留最先出现的
+    Set<String> signatures = new HashSet<>();
+    for (Type itf : getAllInterfaces((Type) apiType)) {
+      for (Element member : itf.asElement().getEnclosedElements()) {
+        if (member.getKind() != ElementKind.METHOD) {
+          continue;
+        }
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.DEFAULT)
+                || modifiers.contains(Modifier.PRIVATE)) {
+          continue;
+        }
+        ExecutableElement method = (ExecutableElement) member;
+        ExecutableType methodType = (ExecutableType) typeUtils.asMemberOf(apiType, method);
+        StringBuilder signature = new StringBuilder(method.getSimpleName());
+        for (TypeMirror paramType : methodType.getParameterTypes()) {
+          signature.append(",").append(typeUtils.erasure(paramType));
+        }
+        if (!signatures.add(signature.toString())) {
+          continue;
+        }
+        MethodSpec.Builder methodBuilder = MethodSpec.overriding(method, apiType, typeUtils);
+        String defaultValue = getDefaultValue(methodType.getReturnType());
+        if (null != defaultValue) {
+          methodBuilder.addStatement("return $L", defaultValue);
+        }
+        typeBuilder.addMethod(methodBuilder.build());
+      }
+    }
+
+    // 写入文件
+    JavaFile.builder(dynamicClassName.packageName(), typeBuilder.build())
+            .addFileComment("此文件为自动生成，用于动态组件空实现")
+            .build()
+            .writeTo(filer);
+  }
+
+  /**
+   * 生成多实现api的广播分发类，以数组下标依次调用所有实现，不查表、不装箱参数、不创建迭代器；
+   * 指定执行器时无返回值的方法在执行器上并行分发，有返回值的方法总是同步分发并返回优先级最高的实现的结果
+   * @param element 被@Api(multiple = true)修饰的接口元素
+   * @throws IOException 写入异常
+   */
+  private void generateBroadcastClassFile(Element element) throws IOException {
+    TypeElement apiElement = (TypeElement) element;
+    if (!isAccessible(element) || !apiElement.getTypeParameters().isEmpty()) {
+      logger.printMessage(Diagnostic.Kind.WARNING,
+              element.toString() + "：非公开或者泛型的多实现api无法生成广播分发类，运行时将使用动态代理");
+      return;
+    }
+    DeclaredType apiType = (DeclaredType) apiElement.asType();
+    TypeName apiTypeName = TypeName.get(apiType);
+    ArrayTypeName targetsType = ArrayTypeName.of(apiTypeName);
+    ClassName broadcastClassName = getApiGeneratedClassName(element, Broadcast_SUFFIX);
+    TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(broadcastClassName.simpleName())
+            .addModifiers(Modifier.FINAL)
+            .addSuperinterface(apiTypeName)
+            .addSuperinterface(ParameterizedTypeName.get(BroadcastDispatcherType, apiTypeName))
+            .addField(targetsType, "targets", Modifier.PRIVATE, Modifier.FINAL)
+            .addField(Executor.class, "executor", Modifier.PRIVATE, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder()
+                    .addParameter(targetsType, "targets")
+                    .addParameter(Executor.class, "executor")
+                    .addStatement("this.targets = targets")
+                    .addStatement("this.executor = executor")
+                    .build())
+            .addMethod(MethodSpec.methodBuilder("dispatchOn")
+                    .addAnnotation(Override.class)
+                    .addModifiers(Modifier.PUBLIC)
+                    .returns(apiTypeName)
+                    .addParameter(Executor.class, "executor")
+                    .addStatement("return new $T(targets, executor)", broadcastClassName)
+                    .build());
+    // 子接口在前，重复的方法签名只保留最先出现的
+    Set<String> signatures = new HashSet<>();
+    for (Type itf : getAllInterfaces((Type) apiType)) {
+      for (Element member : itf.asElement().getEnclosedElements()) {
+        if (member.getKind() != ElementKind.METHOD) {
+          continue;
+        }
+        Set<Modifier> modifiers = member.getModifiers();
+        if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.DEFAULT)
+                || modifiers.contains(Modifier.PRIVATE)) {
+          continue;
+        }
+        ExecutableElement method = (ExecutableElement) member;
+        ExecutableType methodType = (ExecutableType) typeUtils.asMemberOf(apiType, method);
+        StringBuilder signature = new StringBuilder(method.getSimpleName());
+        for (TypeMirror paramType : methodType.getParameterTypes()) {
+          signature.append(",").append(typeUtils.erasure(paramType));
+        }
+        if (!signatures.add(signature.toString())) {
+          continue;
+        }
+        MethodSpec.Builder methodBuilder = MethodSpec.overriding(method, apiType, typeUtils);
+        StringBuilder args = new StringBuilder();
+        for (VariableElement param : method.getParameters()) {
+          if (args.length() > 0) {
+            args.append(", ");
+          }
+          args.append(param.getSimpleName());
+        }
+        // 局部变量以$开头，避免与参数重名
+        methodBuilder.addStatement("final $T $$targets = this.targets", targetsType);
+        TypeMirror returnType = methodType.getReturnType();
+        if (returnType.getKind() == TypeKind.VOID) {
+          methodBuilder.addStatement("final $T $$executor = this.executor", Executor.class)
+                  .beginControlFlow("if (null == $$executor)")
+                  .beginControlFlow("for (int $$i = 0; $$i < $$targets.length; $$i++)")
+                  .addStatement("$$targets[$$i].$L($L)", method.getSimpleName(), args)
+                  .endControlFlow()
+                  .nextControlFlow("else")
+                  .beginControlFlow("for (int $$i = 0; $$i < $$targets.length; $$i++)")
+                  .addStatement("final $T $$target = $$targets[$$i]", apiTypeName)
+                  .addStatement("$$executor.execute(() -> $$target.$L($L))",
+                          method.getSimpleName(), args)
+                  .endControlFlow()
+                  .endControlFlow();
+        } else {
+          methodBuilder.beginControlFlow("if (0 == $$targets.length)")
+                  .addStatement("return $L", getDefaultValue(returnType))
+                  .endControlFlow()
+                  .addStatement("$T $$result = $$targets[0].$L($L)", TypeName.get(returnType),
+                          method.getSimpleName(), args)
+                  .beginControlFlow("for (int $$i = 1; $$i < $$targets.length; $$i++)")
+                  .addStatement("$$targets[$$i].$L($L)", method.getSimpleName(), args)
+                  .endControlFlow()
+                  .addStatement("return $$result");
+        }
+        typeBuilder.addMethod(methodBuilder.build());
+      }
+    }
+
+    // 写入文件
+    JavaFile.builder(broadcastClassName.packageName(), typeBuilder.build())
+            .addFileComment("此文件为自动生成，用于多实现api广播分发")
+            .build()
+            .writeTo(filer);
+  }
+
+  /**
+   * 是否强引用持有的单例api，只有这类单例的解析结果可以静态缓存
+   * @param apiElement 被@Api修饰的接口元素
+   */
+  private static boolean isRetainedSingleton(Element apiElement) {
+    Api annotation = apiElement.getAnnotation(Api.class);
+    return annotation.singleton() && annotation.retain() == Api.Retain.STRONG;
+  }
+
+  /**
+   * api是否强引用持有，与插件判断内联延迟字段的规则一致，非单例api同样视为强引用
+   * @param apiElement 被@Api修饰的接口元素
+   */
+  private static boolean isRetainedApi(Element apiElement) {
+    return apiElement.getAnnotation(Api.class).retain() == Api.Retain.STRONG;
+  }
+
+  /**
+   * 生成api直接访问类，与api同包，插件会把以class常量为参数的Componentization.get*调用改写为对应的方法；
+   * 单例api通过静态持有类在首次访问时解析，之后只是一次静态字段读取，
+   * 持有类初始化时服务还没有就绪则退化为每次通过Componentization获取；
+   * 非强引用的单例可能被释放重建，不使用持有类
+   * @param element 被@Api修饰的公开接口元素
+   * @throws IOException 写入异常
+   */
+  private void generateAccessorClassFile(Element element) throws IOException {
+    TypeName apiTypeName = getRawType(TypeName.get(element.asType()));
+    boolean retained = isRetainedSingleton(element);
+    ClassName accessorClassName = getApiGeneratedClassName(element, Accessor_SUFFIX);
+    TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(accessorClassName.simpleName())
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addOriginatingElement(element)
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+    for (String getter : new String[]{"get", "getSafely", "getLazy", "getLazySafely"}) {
+      MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(getter)
+              .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+              .returns(apiTypeName);
+      if (!getter.endsWith("Safely")) {
+        methodBuilder.addException(ComponentExceptionType);
+      }
+      if (retained && !getter.startsWith("getLazy")) {
+        methodBuilder.addStatement("$T api = Holder.INSTANCE", apiTypeName)
+                .addStatement("return null != api ? api : $T.$L($T.class)",
+                        ComponentizationType, getter, apiTypeName);
+      } else {
+        methodBuilder.addStatement("return $T.$L($T.class)",
+                ComponentizationType, getter, apiTypeName);
+      }
+      typeBuilder.addMethod(methodBuilder.build());
+    }
+    if (retained) {
+      typeBuilder.addType(TypeSpec.classBuilder("Holder")
+              .addModifiers(Modifier.PRIVATE, Modifier.STATIC, Modifier.FINAL)
+              .addField(FieldSpec.builder(apiTypeName, "INSTANCE", Modifier.STATIC, Modifier.FINAL)
+                      .initializer("$T.getSafely($T.class)", ComponentizationType, apiTypeName)
+                      .build())
+              .build());
+    }
+
+    // 写入文件
+    JavaFile.builder(accessorClassName.packageName(), typeBuilder.build())
+            .addFileComment("此文件为自动生成，用于组件直接访问")
+            .build()
+            .writeTo(filer);
+  }
+
+  /**
+   * 生成模块的api静态访问类，如app模块生成AppComponents.xxxAPI()，实现委托给api直接访问类
+   * @param apis 当前模块声明的公开api接口
+   * @throws IOException 写入异常
+   */
+  private void generateComponentsClassFile(List<Element> apis) throws IOException {
+    TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(getComponentsClassName())
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+    Set<String> methodNames = new HashSet<>();
+    for (Element element : apis) {
+      typeBuilder.addMethod(MethodSpec.methodBuilder(getComponentsMethodName(element, methodNames))
+              .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+              .returns(getRawType(TypeName.get(element.asType())))
+              .addStatement("return $T.getSafely()",
+                      getApiGeneratedClassName(element, Accessor_SUFFIX))
+              .build())
+              .addOriginatingElement(element);
+    }
+
+    // 写入文件
+    JavaFile.builder(PACKAGE_SPACE, typeBuilder.build())
+            .addFileComment("此文件为自动生成，用于组件静态访问")
+            .build()
+            .writeTo(filer);
+  }
+
+  /**
+   * 是否可以由注入类注入的字段：非私有、非静态、非final的API接口字段，且所在类在包内可访问，
+   * 内联延迟注入时不包括强引用api的延迟字段，非强引用的单例会被释放重建，仍然注入延迟代理；
+   * 插件使用同样的规则判断，不满足的字段仍然由插件处理
+   */
+  private boolean isInjectable(Element element) {
+    if (element.getKind() != ElementKind.FIELD
+            || !isApiType((Type) element.asType())) {
+      return false;
+    }
+    if (inlineLazy && element.getAnnotation(AutoWired.class).lazy()
+            && isRetainedApi(typeUtils.asElement(element.asType()))) {
+      return false;
+    }
+    Set<Modifier> modifiers = element.getModifiers();
+    if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)
+            || modifiers.contains(Modifier.FINAL)) {
+      return false;
+    }
+    Element host = element.getEnclosingElement();
+    if (host.getKind() != ElementKind.CLASS) {
+      return false;
+    }
+    while (host.getKind() != ElementKind.PACKAGE) {
+      if (host.getModifiers().contains(Modifier.PRIVATE)) {
+        return false;
+      }
+      host = host.getEnclosingElement();
+    }
+    return true;
+  }
+
+  /**
+   * 生成字段注入类，位于宿主类所在包，宿主构造时由插件插入一次inject调用完成所有字段注入；
+   * 单例api的绑定每个宿主类只解析一次，之后的宿主实例直接复用
+   * @param host   宿主类
+   * @param fields 宿主类中可注入的字段
+   * @throws IOException 写入异常
+   */
+  private void generateInjectorClassFile(TypeElement host, List<VariableElement> fields)
+          throws IOException {
+    TypeName hostTypeName = getRawType(TypeName.get(typeUtils.erasure(host.asType())));
+    TypeSpec.Builder typeBuilder = TypeSpec.classBuilder(getInjectorSimpleName(host))
+            .addModifiers(Modifier.PUBLIC, Modifier.FINAL)
+            .addOriginatingElement(host)
+            .addMethod(MethodSpec.constructorBuilder().addModifiers(Modifier.PRIVATE).build());
+    MethodSpec.Builder injectBuilder = MethodSpec.methodBuilder("inject")
+            .addModifiers(Modifier.PUBLIC, Modifier.STATIC)
+            .addParameter(hostTypeName, "target");
+    Set<String> cacheNames = new HashSet<>();
+    for (VariableElement field : fields) {
+      Element apiElement = typeUtils.asElement(field.asType());
+      TypeName apiTypeName = getRawType(TypeName.get(field.asType()));
+      String getter = field.getAnnotation(AutoWired.class).lazy() ? "getLazySafely" : "getSafely";
+      CodeBlock resolver = isAccessible(apiElement)
+              ? CodeBlock.of("$T.$L()", getApiGeneratedClassName(apiElement, Accessor_SUFFIX),
+                      getter)
+              : CodeBlock.of("$T.$L($T.class)", ComponentizationType, getter, apiTypeName);
+      String fieldName = field.getSimpleName().toString();
+      if (!isRetainedSingleton(apiElement)) {
+        injectBuilder.addStatement("target.$L = $L", fieldName, resolver);
+        continue;
+      }
+      // 解析失败时不缓存，下一个宿主实例重新解析
+      String cacheName = "s" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+      for (int i = 2; !cacheNames.add(cacheName); i++) {
+        cacheName = "s" + Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1) + i;
+      }
+      typeBuilder.addField(FieldSpec.builder(apiTypeName, cacheName,
+              Modifier.PRIVATE, Modifier.STATIC, Modifier.VOLATILE).build());
+      injectBuilder.beginControlFlow("if (null == $L)", cacheName)
+              .addStatement("$L = $L", cacheName, resolver)
+              .endControlFlow()
+              .addStatement("target.$L = $L", fieldName, cacheName);
+    }
+    typeBuilder.addMethod(injectBuilder.build());
+
+    // 写入文件
+    JavaFile.builder(ClassName.get(host).packageName(), typeBuilder.build())
+            .addFileComment("此文件为自动生成，用于组件字段注入")
+            .build()
+            .writeTo(filer);
+  }
+
+  /**
+   * api生成类的类名，与api同包，嵌套接口以下划线连接外部类名，如Outer.InnerAPI为Outer_InnerAPI_Accessor；
+   * 不同包的同名api不会冲突，运行时和插件把api类名中的$替换为下划线得到同样的类名
+   */
+  private static ClassName getApiGeneratedClassName(Element apiElement, String suffix) {
+    ClassName apiClassName = ClassName.get((TypeElement) apiElement);
+    return ClassName.get(apiClassName.packageName(),
+            String.join("_", apiClassName.simpleNames()) + suffix);
+  }
+
+  /**
+   * 注入类名称，嵌套类以下划线连接外部类名，如Outer.Inner为Outer_Inner_Injector
+   */
+  private String getInjectorSimpleName(TypeElement host) {
+    return String.join("_", ClassName.get(host).simpleNames()) + Injector_SUFFIX;
+  }
+
+  /**
+   * 访问类名称，由模块名转换为驼峰形式，如library2模块为Library2Components
+   */
+  private String getComponentsClassName() {
+    StringBuilder builder = new StringBuilder();
+    boolean upper = true;
+    for (char c : String.valueOf(moduleName).toCharArray()) {
+      if (!Character.isJavaIdentifierPart(c)) {
+        upper = true;
+        continue;
+      }
+      builder.append(upper ? Character.toUpperCase(c) : c);
+      upper = false;
+    }
+    if (null == moduleName || builder.length() == 0
+            || !Character.isJavaIdentifierStart(builder.charAt(0))) {
+      builder.insert(0, "Module");
+    }
+    return builder.append(Components_SUFFIX).toString();
+  }
+
+  /**
+   * 访问方法名称，默认为api简单类名首字母小写，重名时加上外部类名，仍然重名时追加序号
+   */
+  private String getComponentsMethodName(Element element, Set<String> methodNames) {
+    String simpleName = element.getSimpleName().toString();
+    Element enclosing = element.getEnclosingElement();
+    while (methodNames.contains(decapitalize(simpleName))
+            && enclosing.getKind() != ElementKind.PACKAGE) {
+      simpleName = enclosing.getSimpleName() + simpleName;
+      enclosing = enclosing.getEnclosingElement();
+    }
+    String methodName = decapitalize(simpleName);
+    for (int i = 2; methodNames.contains(methodName); i++) {
+      methodName = decapitalize(simpleName) + i;
+    }
+    methodNames.add(methodName);
+    return methodName;
+  }
+
+  private String decapitalize(String name) {
+    return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+  }
+
+  /**
+   * 返回类型对应的默认值
+   * @return 默认值代码，void返回null
+   */
+  private @Nullable String getDefaultValue(TypeMirror type) {
+    switch (type.getKind()) {
+      case VOID:
+        return null;
+      case BOOLEAN:
+        return "false";
+      case BYTE:
+      case SHORT:
+      case INT:
+      case LONG:
+      case CHAR:
+      case FLOAT:
+      case DOUBLE:
+        return "0";
+      default:
+        return "null";
+    }
+  }
+
   private List<MethodSpec> generateMethod(Type service, Type api, String delegateField) {
     List<MethodSpec> methodSpecs = new ArrayList<>();
     // 添加接口方法实现
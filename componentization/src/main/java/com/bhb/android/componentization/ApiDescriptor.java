@@ -0,0 +1,157 @@
+package com.bhb.android.componentization;
+
+import com.bhb.android.componentization.annotation.Api;
+
+/**
+ * Api描述，注解信息在创建时读取一次，之后的获取只需要一次查表
+ */
+final class ApiDescriptor {
+
+  private static final ServiceDescriptor[] EMPTY_SERVICES = new ServiceDescriptor[0];
+
+  /**
+   * api接口
+   */
+  final Class<? extends API> api;
+  /**
+   * 是否被{@link Api}修饰
+   */
+  final boolean annotated;
+  /**
+   * {@link Api#singleton()}
+   */
+  final boolean singleton;
+  /**
+   * {@link Api#dynamic()}
+   */
+  final boolean dynamic;
+  /**
+   * {@link Api#eager()}，只对单例有效
+   */
+  final boolean eager;
+  /**
+   * {@link Api#scope()}，单例api没有作用域
+   */
+  final String scope;
+  /**
+   * {@link Api#retain()}，非单例api为强引用
+   */
+  final Api.Retain retain;
+  /**
+   * {@link Api#pool()}对应的实例池，不池化时为null
+   */
+  final InstancePool pool;
+  /**
+   * {@link Api#multiple()}
+   */
+  final boolean multiple;
+  /**
+   * 绑定的service，没有注册时为null
+   */
+  volatile ServiceDescriptor service;
+  /**
+   * 多实现api的所有service，按优先级从高到低排列，每次绑定时整体替换
+   */
+  volatile ServiceDescriptor[] services = EMPTY_SERVICES;
+  /**
+   * 多实现api所有实现的实例，只缓存强引用持有的单例
+   */
+  volatile API[] allInstances;
+  /**
+   * 已经载入多实现api所在模块的注册索引数量
+   */
+  volatile int scannedIndexes;
+  /**
+   * 多实现api的同步广播分发器，与{@link #allInstances}对应
+   */
+  volatile Broadcaster broadcaster;
+  /**
+   * 广播分发类构造器，没有生成分发类时为动态代理占位
+   */
+  volatile Broadcaster.DispatcherConstructor broadcastConstructor;
+  /**
+   * 延迟代理类构造器
+   */
+  volatile Componentization.LazyConstructor lazy;
+  /**
+   * 单例api共享的延迟代理实例
+   */
+  volatile API lazyInstance;
+  /**
+   * 没有service实现的动态组件空实现
+   */
+  volatile API dynamicInstance;
+  /**
+   * 单例api进行中的异步构造任务，并发的异步请求共享此任务
+   */
+  volatile AsyncResolver.Task asyncTask;
+
+  ApiDescriptor(Class<? extends API> api) {
+    this.api = api;
+    Api annotation = api.getAnnotation(Api.class);
+    this.annotated = null != annotation;
+    this.singleton = annotated && annotation.singleton();
+    this.dynamic = annotated && annotation.dynamic();
+    this.eager = singleton && annotation.eager();
+    this.scope = annotated && !singleton ? annotation.scope() : "";
+    this.retain = singleton ? annotation.retain() : Api.Retain.STRONG;
+    this.pool = annotated && !singleton && scope.isEmpty() && annotation.pool() > 0
+            ? new InstancePool(annotation.pool()) : null;
+    this.multiple = annotated && annotation.multiple();
+  }
+
+  /**
+   * 绑定service，已经解析的延迟代理和共享代理实例随之失效
+   */
+  void bind(ServiceDescriptor service) {
+    if (singleton) {
+      service.retain(retain);
+    }
+    if (multiple) {
+      service = addService(service);
+    }
+    if (null != pool && this.service != service) {
+      // 池中是旧service的实例
+      pool.clear();
+    }
+    this.service = service;
+    this.lazy = null;
+    this.lazyInstance = null;
+  }
+
+  /**
+   * 多实现api加入service，按优先级从高到低插入，相同优先级按绑定顺序
+   * @return 优先级最高的service
+   */
+  private synchronized ServiceDescriptor addService(ServiceDescriptor service) {
+    ServiceDescriptor[] services = this.services;
+    for (ServiceDescriptor bound : services) {
+      if (bound == service) {
+        return services[0];
+      }
+    }
+    int index = 0;
+    while (index < services.length && services[index].priority >= service.priority) {
+      index++;
+    }
+    ServiceDescriptor[] newServices = new ServiceDescriptor[services.length + 1];
+    System.arraycopy(services, 0, newServices, 0, index);
+    newServices[index] = service;
+    System.arraycopy(services, index, newServices, index + 1, services.length - index);
+    this.services = newServices;
+    this.allInstances = null;
+    return newServices[0];
+  }
+
+  /**
+   * 缓存所有实现的实例，期间有新的绑定时放弃
+   * @param services  创建实例时的service数组
+   * @param instances 按相同顺序创建的实例
+   */
+  synchronized void cacheAll(ServiceDescriptor[] services, API[] instances) {
+    if (this.services == services) {
+      this.allInstances = instances;
+    }
+  }
+
+}
@@ -0,0 +1,143 @@
+package com.bhb.android.componentization;
+
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 异步获取组件，查找注册和构造service都在执行器上进行，调用线程不会等待后台注册；
+ * 同一个单例api的并发请求共享同一个进行中的构造任务，已经构造完成的单例直接返回完成状态的结果，不经过执行器
+ */
+final class AsyncResolver {
+
+  /**
+   * Log tag
+   */
+  private static final String TAG = "AsyncResolver";
+  /**
+   * 默认工作线程名前缀
+   */
+  private static final String THREAD_NAME = "Componentization-async-";
+  /**
+   * 空闲工作线程的存活时间，毫秒
+   */
+  private static final long KEEP_ALIVE = 1000;
+
+  /**
+   * 构造使用的执行器，没有设置时首次使用创建默认线程池
+   */
+  private static volatile Executor sExecutor;
+
+  /**
+   * 异步构造任务，单例api的任务结束后从api描述中移除，失败的请求下次重新构造
+   */
+  static final class Task extends FutureTask<API> {
+
+    /**
+     * 共享任务的单例api描述，不共享时为null
+     */
+    private final ApiDescriptor descriptor;
+
+    Task(ApiDescriptor descriptor, Callable<API> callable) {
+      super(callable);
+      this.descriptor = descriptor;
+    }
+
+    void fail(Throwable throwable) {
+      setException(throwable);
+    }
+
+    @Override
+    protected void done() {
+      if (null == descriptor) {
+        return;
+      }
+      synchronized (descriptor) {
+        if (descriptor.asyncTask == this) {
+          descriptor.asyncTask = null;
+        }
+      }
+    }
+  }
+
+  private AsyncResolver() {
+  }
+
+  static void setExecutor(Executor executor) {
+    sExecutor = executor;
+  }
+
+  /**
+   * 当前执行器，默认为与cpu数量相当的守护线程池，空闲时线程全部退出
+   */
+  static Executor getExecutor() {
+    Executor executor = sExecutor;
+    if (null != executor) {
+      return executor;
+    }
+    synchronized (AsyncResolver.class) {
+      if (null == sExecutor) {
+        int parallelism = Math.max(2, Runtime.getRuntime().availableProcessors());
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism,
+                KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+          Thread thread = new Thread(runnable, THREAD_NAME + threadIndex.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        sExecutor = pool;
+      }
+      return sExecutor;
+    }
+  }
+
+  /**
+   * 异步获取api实现
+   * @param type     api接口
+   * @param executor 执行器，共享进行中的单例任务时不一定在此执行器上构造
+   * @return 结果，构造异常以{@link java.util.concurrent.ExecutionException}的形式抛出
+   */
+  static Future<API> resolve(Class<? extends API> type, Executor executor) {
+    Callable<API> callable = () -> Componentization.get(type);
+    ApiDescriptor descriptor = Componentization.getDescriptor(type);
+    if (!descriptor.singleton) {
+      return submit(new Task(null, callable), executor);
+    }
+    ServiceDescriptor service = descriptor.service;
+    if (null != service && service.isCreated()) {
+      Task task = new Task(null, callable);
+      task.run();
+      return task;
+    }
+    Task task;
+    synchronized (descriptor) {
+      task = descriptor.asyncTask;
+      if (null != task) {
+        return task;
+      }
+      task = new Task(descriptor, callable);
+      descriptor.asyncTask = task;
+    }
+    return submit(task, executor);
+  }
+
+  private static Task submit(Task task, Executor executor) {
+    try {
+      executor.execute(task);
+    } catch (RejectedExecutionException e) {
+      Log.e(TAG, Log.getStackTraceString(e));
+      task.fail(e);
+    }
+    return task;
+  }
+
+}
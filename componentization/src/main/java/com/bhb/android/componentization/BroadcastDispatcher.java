@@ -0,0 +1,25 @@
+package com.bhb.android.componentization;
+
+import java.util.concurrent.Executor;
+
+/**
+ * 编译期生成的多实现api广播分发类接口，分发类同时实现api本身；
+ * 分发类生成在api所在的包中，因此接口需要公开，业务代码不应直接使用
+ *
+ * @param <C> api类型
+ */
+public interface BroadcastDispatcher<C extends API> {
+
+  /**
+   * 生成的分发类后缀
+   */
+  String SUFFIX = "_Broadcast";
+
+  /**
+   * 在执行器上并行分发同一组实现
+   * @param executor 执行器
+   * @return C
+   */
+  C dispatchOn(Executor executor);
+
+}
@@ -0,0 +1,188 @@
+package com.bhb.android.componentization;
+
+import android.util.Log;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Executor;
+
+/**
+ * 多实现api的同步广播分发器，优先使用编译期生成的分发类，没有生成时退化为动态代理；
+ * 分发器与创建时的实现数组对应，实现数组被缓存时分发器随之缓存在api描述中
+ */
+final class Broadcaster {
+
+  /**
+   * Log tag
+   */
+  private static final String TAG = "Broadcaster";
+
+  /**
+   * 分发的实现
+   */
+  final API[] targets;
+  /**
+   * 同步分发器
+   */
+  final API dispatcher;
+
+  private Broadcaster(API[] targets, API dispatcher) {
+    this.targets = targets;
+    this.dispatcher = dispatcher;
+  }
+
+  /**
+   * 获取实现数组对应的同步分发器
+   * @param descriptor api描述
+   * @param targets    {@link Componentization#getAll(Class)}返回的实现
+   * @return 分发器
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends API> T obtain(ApiDescriptor descriptor, T[] targets) {
+    Broadcaster broadcaster = descriptor.broadcaster;
+    if (null != broadcaster && broadcaster.targets == targets) {
+      return (T) broadcaster.dispatcher;
+    }
+    API dispatcher = newDispatcher(descriptor, targets);
+    if (targets == descriptor.allInstances) {
+      descriptor.broadcaster = new Broadcaster(targets, dispatcher);
+    }
+    return (T) dispatcher;
+  }
+
+  /**
+   * 由同步分发器得到在执行器上并行分发的分发器
+   * @param dispatcher 同步分发器
+   * @param api        api接口
+   * @param executor   执行器
+   * @return 分发器
+   */
+  @SuppressWarnings("unchecked")
+  static <T extends API> T dispatchOn(T dispatcher, Class<T> api, Executor executor) {
+    if (dispatcher instanceof BroadcastDispatcher) {
+      return ((BroadcastDispatcher<T>) dispatcher).dispatchOn(executor);
+    }
+    Handler handler = (Handler) Proxy.getInvocationHandler(dispatcher);
+    return (T) newProxy(api, new Handler(handler.targets, executor));
+  }
+
+  private static API newDispatcher(ApiDescriptor descriptor, API[] targets) {
+    DispatcherConstructor constructor = descriptor.broadcastConstructor;
+    if (null == constructor) {
+      constructor = DispatcherConstructor.resolve(descriptor.api);
+      descriptor.broadcastConstructor = constructor;
+    }
+    return constructor.newInstance(descriptor.api, targets);
+  }
+
+  private static Class<?> targetsClass(Class<? extends API> api) {
+    return Array.newInstance(api, 0).getClass();
+  }
+
+  private static API newProxy(Class<? extends API> api, Handler handler) {
+    return (API) Proxy.newProxyInstance(api.getClassLoader(), new Class<?>[]{api}, handler);
+  }
+
+  /**
+   * 生成的广播分发类构造器，按api解析一次缓存在描述中，包括不存在分发类的情况；
+   * 非单例api每次广播的实现数组不同，只需要用缓存的构造器创建分发器
+   */
+  static final class DispatcherConstructor {
+
+    /**
+     * 没有分发类时的占位，使用动态代理分发
+     */
+    static final DispatcherConstructor PROXY = new DispatcherConstructor(null);
+
+    private final Constructor<?> constructor;
+
+    private DispatcherConstructor(Constructor<?> constructor) {
+      this.constructor = constructor;
+    }
+
+    static DispatcherConstructor resolve(Class<? extends API> api) {
+      try {
+        Class<?> dispatcherClazz = Class.forName(
+                Componentization.getGeneratedClassName(api, BroadcastDispatcher.SUFFIX),
+                true, api.getClassLoader());
+        Constructor<?> constructor = dispatcherClazz.getDeclaredConstructor(
+                targetsClass(api), Executor.class);
+        constructor.setAccessible(true);
+        return new DispatcherConstructor(constructor);
+      } catch (ClassNotFoundException e) {
+        Log.w(TAG, "组件[" + api.getName() + "]没有广播分发类，降级为动态代理");
+      } catch (NoSuchMethodException e) {
+        Log.e(TAG, Log.getStackTraceString(e));
+      }
+      return PROXY;
+    }
+
+    API newInstance(Class<? extends API> api, API[] targets) {
+      if (null != constructor) {
+        try {
+          return (API) constructor.newInstance(targets, null);
+        } catch (Exception e) {
+          Log.e(TAG, Log.getStackTraceString(e));
+        }
+      }
+      return newProxy(api, new Handler(targets, null));
+    }
+  }
+
+  /**
+   * 没有生成分发类时的动态代理分发
+   */
+  private static final class Handler implements InvocationHandler {
+
+    final API[] targets;
+    final Executor executor;
+
+    Handler(API[] targets, Executor executor) {
+      this.targets = targets;
+      this.executor = executor;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getDeclaringClass() == Object.class) {
+        switch (method.getName()) {
+          case "hashCode":
+            return System.identityHashCode(proxy);
+          case "equals":
+            return proxy == args[0];
+          default:
+            return proxy.getClass().getName();
+        }
+      }
+      if (null != executor && void.class == method.getReturnType()) {
+        for (API target : targets) {
+          executor.execute(() -> {
+            try {
+              method.invoke(target, args);
+            } catch (Exception e) {
+              Log.e(TAG, Log.getStackTraceString(e));
+            }
+          });
+        }
+        return null;
+      }
+      Object result = Componentization.getDefaultValue(method.getReturnType());
+      try {
+        for (int i = 0; i < targets.length; i++) {
+          Object value = method.invoke(targets[i], args);
+          if (0 == i) {
+            result = value;
+          }
+        }
+      } catch (InvocationTargetException e) {
+        throw e.getCause();
+      }
+      return result;
+    }
+  }
+
+}
@@ -0,0 +1,150 @@
+package com.bhb.android.componentization;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+/**
+ * 组件注册启动控制，默认在{@link Componentization}类初始化时同步载入所有注册器；
+ * 调用{@link #startAsync()}后改为在后台线程载入，获取组件时只等待请求的api注册完成，不等待整个注册表
+ */
+public final class ComponentBootstrap {
+
+  /**
+   * 后台载入线程名
+   */
+  private static final String THREAD_NAME = "Componentization-bootstrap";
+
+  /**
+   * 等待api注册的监视器，每次注册后唤醒所有等待者
+   */
+  private static final Object sLock = new Object();
+  /**
+   * 是否已经开始载入，同步或者异步只会发生一次
+   */
+  private static boolean sStarted;
+  /**
+   * 是否正在后台载入
+   */
+  private static volatile boolean sBootstrapping;
+  /**
+   * 应用assets，启动时从中内存映射插件生成的二进制注册表，没有关联时只读取注册属性文件
+   */
+  private static volatile AssetManager sAssets;
+
+  private ComponentBootstrap() {
+  }
+
+  /**
+   * 关联应用上下文，启动时直接内存映射apk中未压缩的二进制注册表，多进程共享同一份页缓存；
+   * 需要在首次访问{@link Componentization}之前调用，建议放在Application的attachBaseContext中
+   * @param context 任意上下文
+   */
+  public static void attachContext(Context context) {
+    Context applicationContext = context.getApplicationContext();
+    // attachBaseContext中Application还没有关联完成，直接使用传入的上下文
+    sAssets = (null != applicationContext ? applicationContext : context).getAssets();
+  }
+
+  static AssetManager getAssets() {
+    return sAssets;
+  }
+
+  /**
+   * 在后台线程开始载入注册器，需要在首次访问{@link Componentization}之前调用，
+   * 建议放在Application的静态初始化或者attachBaseContext中；已经开始载入时忽略
+   */
+  public static void startAsync() {
+    if (!markStarted(true)) {
+      return;
+    }
+    Thread thread = new Thread(() -> {
+      try {
+        Componentization.bootstrap();
+      } finally {
+        sBootstrapping = false;
+        signal();
+      }
+    }, THREAD_NAME);
+    thread.setPriority(Thread.MAX_PRIORITY);
+    thread.start();
+  }
+
+  /**
+   * 标记开始载入
+   * @param async 是否后台载入
+   * @return 是否由本次调用开始，之前已经开始过返回false
+   */
+  static synchronized boolean markStarted(boolean async) {
+    if (sStarted) {
+      return false;
+    }
+    sStarted = true;
+    sBootstrapping = async;
+    return true;
+  }
+
+  /**
+   * 是否正在后台载入
+   */
+  static boolean isBootstrapping() {
+    return sBootstrapping;
+  }
+
+  /**
+   * 有api注册完成，唤醒等待者重新检查
+   */
+  static void signal() {
+    synchronized (sLock) {
+      sLock.notifyAll();
+    }
+  }
+
+  /**
+   * 等待后台载入结束，用于需要完整注册表的请求，例如获取多实现api的所有实现
+   */
+  static void awaitBootstrap() {
+    if (!sBootstrapping) {
+      return;
+    }
+    boolean interrupted = false;
+    synchronized (sLock) {
+      while (sBootstrapping) {
+        try {
+          sLock.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * 等待api绑定service，后台载入结束后仍然没有绑定时返回null
+   * @param descriptor api描述
+   * @return 绑定的service
+   */
+  static ServiceDescriptor await(ApiDescriptor descriptor) {
+    ServiceDescriptor service = descriptor.service;
+    if (null != service || !sBootstrapping) {
+      return service;
+    }
+    boolean interrupted = false;
+    synchronized (sLock) {
+      while (null == (service = descriptor.service) && sBootstrapping) {
+        try {
+          sLock.wait();
+        } catch (InterruptedException e) {
+          interrupted = true;
+        }
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+    return service;
+  }
+
+}
@@ -0,0 +1,20 @@
+package com.bhb.android.componentization;
+
+/**
+ * 插件在应用模块中生成的注册索引，以class常量列出启动时需要载入的模块注册器；
+ * 启动时只查找一次，直接注册而不再按类名反射载入注册器，运行时库本身不被修改；
+ * 有api索引的模块不在其中，仍然在api首次请求时载入
+ */
+interface ComponentIndex {
+
+  /**
+   * 生成的索引类名
+   */
+  String CLASS_NAME = "com.bhb.android.componentization.ComponentIndex_Impl";
+
+  /**
+   * 启动模块注册器
+   */
+  Class<? extends ComponentRegister>[] getRegisters();
+
+}
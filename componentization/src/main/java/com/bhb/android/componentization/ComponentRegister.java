@@ -1,5 +1,6 @@
 package com.bhb.android.componentization;
 
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -18,10 +19,32 @@ interface ComponentRegister {
   class Item {
     final List<Class<? extends API>> apis;
     final Class<? extends API> service;
+    final ServiceFactory<? extends API> factory;
+    final List<Class<? extends API>> dependencies;
+    final int priority;
 
     Item(List<Class<? extends API>> apis, Class<? extends API> service) {
+      this(apis, service, null);
+    }
+
+    Item(List<Class<? extends API>> apis, Class<? extends API> service,
+         ServiceFactory<? extends API> factory) {
+      this(apis, service, factory, Collections.<Class<? extends API>>emptyList());
+    }
+
+    Item(List<Class<? extends API>> apis, Class<? extends API> service,
+         ServiceFactory<? extends API> factory, List<Class<? extends API>> dependencies) {
+      this(apis, service, factory, dependencies, 0);
+    }
+
+    Item(List<Class<? extends API>> apis, Class<? extends API> service,
+         ServiceFactory<? extends API> factory, List<Class<? extends API>> dependencies,
+         int priority) {
       this.apis = apis;
       this.service = service;
+      this.factory = factory;
+      this.dependencies = dependencies;
+      this.priority = priority;
     }
   }
 
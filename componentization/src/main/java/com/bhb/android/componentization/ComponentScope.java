@@ -0,0 +1,194 @@
+package com.bhb.android.componentization;
+
+import android.util.Log;
+
+import com.bhb.android.componentization.annotation.Api;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 组件作用域，例如应用 -> 页面 -> 子页面，与全局注册表共享api绑定，只保存{@link Api#scope()}组件的实例；
+ * 作用域关闭时统一释放其中的实例并关闭所有子作用域，父作用域只弱引用子作用域，未关闭的子作用域可以被回收
+ */
+public final class ComponentScope {
+
+  /**
+   * Log tag
+   */
+  private static final String TAG = "ComponentScope";
+
+  /**
+   * 作用域名称，与{@link Api#scope()}匹配
+   */
+  private final String name;
+  private final ComponentScope parent;
+  /**
+   * 作用域组件实例，以service描述为键，实现了多个作用域api的service共享同一个实例
+   */
+  private final Map<ServiceDescriptor, API> instances = new ConcurrentHashMap<>();
+  /**
+   * 正在构造实例的service，用于识别循环引用
+   */
+  private final Set<ServiceDescriptor> creating = new HashSet<>();
+  private final Set<ComponentScope> children =
+          Collections.newSetFromMap(new WeakHashMap<ComponentScope, Boolean>());
+  private volatile boolean closed;
+
+  private ComponentScope(String name, ComponentScope parent) {
+    this.name = name;
+    this.parent = parent;
+  }
+
+  /**
+   * 创建顶级作用域
+   * @param name 作用域名称
+   * @return 作用域
+   */
+  public static ComponentScope create(String name) {
+    return new ComponentScope(name, null);
+  }
+
+  /**
+   * 创建子作用域，只记录父作用域，不复制任何绑定和实例
+   * @param name 作用域名称
+   * @return 子作用域
+   * @throws IllegalStateException 当前作用域已经关闭
+   */
+  public ComponentScope newChild(String name) {
+    ComponentScope child = new ComponentScope(name, this);
+    synchronized (children) {
+      if (closed) {
+        throw new IllegalStateException("作用域[" + this.name + "]已经关闭");
+      }
+      children.add(child);
+    }
+    return child;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public ComponentScope getParent() {
+    return parent;
+  }
+
+  public boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * 尝试获取指定api实现
+   * @param type api接口
+   * @param <T>  类型
+   * @return     api实现，没有作用域的api与{@link Componentization#getSafely(Class)}一致
+   */
+  public <T extends API> T getSafely(Class<T> type) {
+    try {
+      return get(type);
+    } catch (ComponentException e) {
+      e.printStackTrace();
+      Log.e(TAG, Log.getStackTraceString(e));
+    }
+    return null;
+  }
+
+  /**
+   * 获取指定api实现，作用域api在名称匹配的最近一级作用域中只创建一次
+   * @param type api接口
+   * @param <T>  类型
+   * @return     api实现，没有作用域的api与{@link Componentization#get(Class)}一致
+   * @throws ComponentException 相关异常，作用域已经关闭时也会抛出
+   */
+  @SuppressWarnings("unchecked")
+  public <T extends API> T get(Class<T> type) throws ComponentException {
+    ApiDescriptor descriptor = Componentization.getDescriptor(type);
+    if (descriptor.scope.isEmpty()) {
+      return Componentization.get(type);
+    }
+    ServiceDescriptor service = Componentization.findService(descriptor);
+    if (null == service) {
+      // 动态空实现没有状态，不需要作用域管理
+      return Componentization.get(type);
+    }
+    return (T) findOwner(descriptor.scope).obtain(type, service);
+  }
+
+  /**
+   * 名称匹配的最近一级作用域，没有匹配时为当前作用域
+   */
+  private ComponentScope findOwner(String scope) {
+    for (ComponentScope current = this; null != current; current = current.parent) {
+      if (scope.equals(current.name)) {
+        return current;
+      }
+    }
+    return this;
+  }
+
+  private API obtain(Class<? extends API> type, ServiceDescriptor service)
+          throws ComponentException {
+    API instance = instances.get(service);
+    if (null != instance) {
+      return instance;
+    }
+    synchronized (instances) {
+      if (closed) {
+        throw new ComponentException("作用域[" + name + "]已经关闭，无法获取组件[" +
+                type.getCanonicalName() + "]");
+      }
+      instance = instances.get(service);
+      if (null != instance) {
+        return instance;
+      }
+      if (!creating.add(service)) {
+        throw new ComponentException("组件[" + type.getCanonicalName() + "]在作用域[" +
+                name + "]中存在循环引用，请对其中的注入使用延迟初始化");
+      }
+      try {
+        instance = service.newInstance();
+      } finally {
+        creating.remove(service);
+      }
+      if (null == instance) {
+        throw new ComponentException("组件[" + type.getCanonicalName() + "]创建失败");
+      }
+      instances.put(service, instance);
+      return instance;
+    }
+  }
+
+  /**
+   * 关闭作用域，先关闭所有子作用域，然后释放当前作用域的全部实例，关闭后无法再获取作用域组件
+   */
+  public void close() {
+    List<ComponentScope> closing;
+    synchronized (children) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      closing = new ArrayList<>(children);
+      children.clear();
+    }
+    for (ComponentScope child : closing) {
+      child.close();
+    }
+    synchronized (instances) {
+      instances.clear();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return null != parent ? parent + " -> " + name : name;
+  }
+
+}
@@ -1,27 +1,32 @@
 package com.bhb.android.componentization;
 
-import android.text.TextUtils;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.content.res.Configuration;
 import android.util.Log;
 
-import com.bhb.android.componentization.annotation.Api;
-import com.bhb.android.componentization.annotation.Provider;
 import com.bhb.android.componentization.annotation.Service;
 
-import java.io.IOException;
-import java.io.InputStream;
+import com.bhb.android.componentization.annotation.Api;
+
+import java.lang.reflect.Array;
 import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 组件入口调用
@@ -41,18 +46,53 @@ public final class Componentization {
           Objects.requireNonNull(Componentization.class.getPackage()).getName();
 
   /**
-   * 收集到的组件注册信息
+   * 生成的动态组件空实现类后缀
    */
-  private final static Map<Class<? extends API>, Class<? extends API>>
-          sComponentProvider = new HashMap<>();
+  private static final String DYNAMIC_SUFFIX = "_Dynamic";
+
   /**
-   * 单例组件存储
+   * api描述表，注解信息和绑定关系都缓存在描述中；冻结后只保存还没有进入冻结表的新增描述
    */
-  private final static Map<Class<? extends API>, API> sComponents = new HashMap<>();
+  private final static ConcurrentMap<Class<? extends API>, ApiDescriptor>
+          sDescriptors = new ConcurrentHashMap<>();
   /**
-   * 默认api代理空调用实现
+   * 冻结的api描述表，启动注册完成时构建，之后每载入一个模块合并新增的描述重建；
+   * 两次重建之间新增的api从{@link #sDescriptors}中查找
    */
-  private final static InvocationHandler sDynamicHandler = (proxy, method, args) -> null;
+  private static volatile FrozenRegistry sFrozen;
+  /**
+   * 每个ClassLoader的模块注册索引，有api索引的模块在首次请求其中的api时才载入
+   */
+  private final static List<ModuleIndex> sModuleIndexes = new CopyOnWriteArrayList<>();
+  /**
+   * 已经读取过的注册属性文件地址，附加ClassLoader时跳过父ClassLoader中的文件
+   */
+  private final static Set<String> sRegisterResources = new HashSet<>();
+  /**
+   * service描述表，以service类为键，实现了多个单例api的service共享同一个描述和实例
+   */
+  private final static ConcurrentMap<Class<? extends API>, ServiceDescriptor>
+          sServices = new ConcurrentHashMap<>();
+  /**
+   * 是否已经注册系统内存回调
+   */
+  private final static AtomicBoolean sMemoryCallbacksRegistered = new AtomicBoolean();
+  /**
+   * 默认api代理空调用实现，没有生成空实现类时使用
+   */
+  private final static InvocationHandler sDynamicHandler = (proxy, method, args) -> {
+    if (method.getDeclaringClass() == Object.class) {
+      switch (method.getName()) {
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "equals":
+          return proxy == args[0];
+        default:
+          return proxy.getClass().getName();
+      }
+    }
+    return getDefaultValue(method.getReturnType());
+  };
 
   /**
    * 手动注册
@@ -60,7 +100,10 @@ public final class Componentization {
    * @param service service实例
    */
   public static void register(Class<? extends API> api, Class<? extends API> service) {
-    sComponentProvider.put(api, service);
+    getDescriptor(api).bind(getServiceDescriptor(service));
+    if (ComponentBootstrap.isBootstrapping()) {
+      ComponentBootstrap.signal();
+    }
   }
 
   /**
@@ -69,7 +112,12 @@ public final class Componentization {
    * @param service service实例
    */
   public static void register(Class<? extends API> api, API service) {
-    sComponents.put(api, service);
+    ServiceDescriptor serviceDescriptor = new ServiceDescriptor(service.getClass(), service);
+    sServices.putIfAbsent(service.getClass(), serviceDescriptor);
+    getDescriptor(api).bind(serviceDescriptor);
+    if (ComponentBootstrap.isBootstrapping()) {
+      ComponentBootstrap.signal();
+    }
   }
 
   /**
@@ -78,8 +126,17 @@ public final class Componentization {
   private static void register(Class<? extends ComponentRegister> register) {
     try {
       ComponentRegister.Item registerItem = register.newInstance().register();
+      ServiceDescriptor serviceDescriptor = getServiceDescriptor(registerItem.service);
+      if (null != registerItem.factory) {
+        serviceDescriptor.factory = registerItem.factory;
+      }
+      serviceDescriptor.dependencies = registerItem.dependencies;
+      serviceDescriptor.priority = registerItem.priority;
       for (Class<? extends API> api : registerItem.apis) {
-        sComponentProvider.put(api, registerItem.service);
+        getDescriptor(api).bind(serviceDescriptor);
+      }
+      if (ComponentBootstrap.isBootstrapping()) {
+        ComponentBootstrap.signal();
       }
       Log.e(TAG, "register: " + registerItem.service.getName());
     } catch (Exception e) {
@@ -88,6 +145,109 @@ public final class Componentization {
     }
   }
 
+  /**
+   * 获取api描述，首次获取时读取注解并缓存
+   */
+  static ApiDescriptor getDescriptor(Class<? extends API> api) {
+    FrozenRegistry frozen = sFrozen;
+    ApiDescriptor descriptor = null != frozen ? frozen.get(api) : null;
+    if (null != descriptor) {
+      return descriptor;
+    }
+    descriptor = sDescriptors.get(api);
+    if (null != descriptor) {
+      return descriptor;
+    }
+    // 冻结时先发布冻结表再从描述表中移除，描述表中找不到时重新读取冻结表，避免重复创建描述
+    frozen = sFrozen;
+    descriptor = null != frozen ? frozen.get(api) : null;
+    if (null != descriptor) {
+      return descriptor;
+    }
+    descriptor = new ApiDescriptor(api);
+    ApiDescriptor lastDescriptor = sDescriptors.putIfAbsent(api, descriptor);
+    return null != lastDescriptor ? lastDescriptor : descriptor;
+  }
+
+  /**
+   * 查找api绑定的service：后台注册时等待注册完成，仍然没有时载入api所在的模块
+   * @param descriptor api描述
+   * @return 绑定的service，没有实现时返回null
+   */
+  static ServiceDescriptor findService(ApiDescriptor descriptor) {
+    ServiceDescriptor service = ComponentBootstrap.await(descriptor);
+    if (null != service) {
+      return service;
+    }
+    String api = descriptor.api.getName();
+    for (ModuleIndex moduleIndex : sModuleIndexes) {
+      ModuleIndex.Module module = moduleIndex.find(api);
+      if (null == module || module.loaded) {
+        continue;
+      }
+      loadModule(module);
+      service = descriptor.service;
+      if (null != service) {
+        return service;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 冻结api描述表：新增的描述与已有冻结表合并重建，发布后从描述表中移除，同一个描述只保存一份；
+   * 描述对象本身保持可变，已冻结api的注册直接更新描述，不需要重建
+   */
+  static void freeze() {
+    synchronized (sDescriptors) {
+      List<ApiDescriptor> descriptors = new ArrayList<>(sDescriptors.values());
+      FrozenRegistry lastFrozen = sFrozen;
+      if (null != lastFrozen) {
+        descriptors.addAll(lastFrozen.getDescriptors());
+      }
+      FrozenRegistry frozen = FrozenRegistry.build(descriptors);
+      if (null == frozen) {
+        // 保留上一次的冻结表，新增的描述继续从描述表中查找
+        Log.w(TAG, "freeze failed, fallback to hash map lookup");
+        return;
+      }
+      sFrozen = frozen;
+      for (ApiDescriptor descriptor : descriptors) {
+        sDescriptors.remove(descriptor.api, descriptor);
+      }
+    }
+  }
+
+  /**
+   * 当前所有api描述，包括冻结表和之后新增的描述
+   */
+  private static Map<Class<? extends API>, ApiDescriptor> snapshotDescriptors() {
+    // 先复制描述表再读取冻结表，冻结过程中移除的描述一定已经在发布的冻结表中
+    Map<Class<? extends API>, ApiDescriptor> descriptors = new HashMap<>(sDescriptors);
+    FrozenRegistry frozen = sFrozen;
+    if (null != frozen) {
+      for (ApiDescriptor descriptor : frozen.getDescriptors()) {
+        descriptors.put(descriptor.api, descriptor);
+      }
+    }
+    return descriptors;
+  }
+
+  /**
+   * 获取service描述，每个service类只有一个
+   */
+  private static ServiceDescriptor getServiceDescriptor(Class<? extends API> service) {
+    ServiceDescriptor descriptor = sServices.get(service);
+    if (null == descriptor) {
+      descriptor = new ServiceDescriptor(service);
+      ServiceDescriptor lastDescriptor = sServices.putIfAbsent(service, descriptor);
+      if (null != lastDescriptor) {
+        descriptor = lastDescriptor;
+      }
+    }
+    return descriptor;
+  }
+
   /**
    * 尝试获取指定api实现
    * @param type api接口
@@ -113,35 +273,187 @@ public final class Componentization {
    */
   @SuppressWarnings("unchecked")
   public static <T extends API> T get(Class<T> type) throws ComponentException {
-    Api apiAnnotation = type.getAnnotation(Api.class);
-    if (null == apiAnnotation) {
+    ApiDescriptor descriptor = getDescriptor(type);
+    if (!descriptor.annotated) {
       throw new ComponentException("API接口需要被Api注解修饰");
     }
-    Class<T> service = (Class<T>) sComponentProvider.get(type);
+    ServiceDescriptor service = findService(descriptor);
     if (null == service) {
-      if (apiAnnotation.dynamic()) {
-        Log.w(TAG, "动态组件[" + type.getCanonicalName() + "]没有Service实现，暂时忽略");
-        return (T) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
-                new Class[]{type}, sDynamicHandler);
+      if (descriptor.dynamic) {
+        return (T) getDynamic(descriptor);
       }
       throw new ComponentException(
               "组件[" + type.getCanonicalName() + "]没有找到，确认是否有Service实现");
     }
-    if (apiAnnotation.singleton()) {
-      T serviceInstance = (T) sComponents.get(type);
-      if (null != serviceInstance) {
-        return serviceInstance;
+    checkUnscoped(descriptor);
+    if (descriptor.singleton) {
+      return (T) service.getSingleton(type);
+    }
+    InstancePool pool = descriptor.pool;
+    if (null != pool) {
+      API instance = pool.acquire();
+      if (null != instance) {
+        return (T) instance;
       }
-      serviceInstance = makeInstance(service, true);
-      if (null == serviceInstance) {
-        throw new ComponentException(
-            "组件[" + type.getCanonicalName() + "]存在循环单例引用，" +
-            "请务必打开延迟初始化模式，这样可以规避由于实例同时请求建立引发的赋值冲突");
+    }
+    return (T) service.newInstance();
+  }
+
+  /**
+   * 异步获取指定api实现，在{@link #setAsyncExecutor(Executor)}设置的执行器上查找和构造；
+   * 同一个单例的并发请求共享同一次构造，已经构造完成的单例直接返回完成的结果，
+   * 可以提前请求耗时组件，只在真正使用的地方等待
+   * @param type api接口
+   * @param <T>  类型
+   * @return     结果，相关异常以{@link java.util.concurrent.ExecutionException}的形式抛出
+   */
+  public static <T extends API> Future<T> getAsync(Class<T> type) {
+    return getAsync(type, AsyncResolver.getExecutor());
+  }
+
+  /**
+   * 在指定执行器上异步获取api实现，单例已经有进行中的构造时共享该构造，不再提交到此执行器
+   * @param type     api接口
+   * @param executor 执行器
+   * @param <T>      类型
+   * @return         结果，相关异常以{@link java.util.concurrent.ExecutionException}的形式抛出
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends API> Future<T> getAsync(Class<T> type, Executor executor) {
+    return (Future<T>) (Future<?>) AsyncResolver.resolve(type, executor);
+  }
+
+  /**
+   * 设置异步获取组件的默认执行器，没有设置时使用内部的守护线程池；
+   * 非Android环境可以使用虚拟线程执行器，例如Executors.newVirtualThreadPerTaskExecutor()
+   * @param executor 执行器，null恢复为内部线程池
+   */
+  public static void setAsyncExecutor(Executor executor) {
+    AsyncResolver.setExecutor(executor);
+  }
+
+  /**
+   * 获取多实现api的所有实现，按优先级从高到低排列；单例api的结果在首次获取后缓存，
+   * 之后直接返回同一个数组，调用者不能修改
+   * @param type api接口，需要声明{@link Api#multiple()}
+   * @param <T>  类型
+   * @return     所有实现，没有实现时为空数组
+   * @throws ComponentException 相关异常
+   */
+  @SuppressWarnings("unchecked")
+  public static <T extends API> T[] getAll(Class<T> type) throws ComponentException {
+    ApiDescriptor descriptor = getDescriptor(type);
+    if (!descriptor.multiple) {
+      throw new ComponentException("API接口需要被Api(multiple = true)注解修饰");
+    }
+    API[] all = descriptor.allInstances;
+    if (null != all && descriptor.scannedIndexes >= sModuleIndexes.size()) {
+      // 附加ClassLoader后需要重新查找新的模块
+      return (T[]) all;
+    }
+    loadAllModules(descriptor);
+    ServiceDescriptor[] services = descriptor.services;
+    T[] instances = (T[]) Array.newInstance(type, services.length);
+    for (int i = 0; i < services.length; i++) {
+      instances[i] = (T) (descriptor.singleton
+              ? services[i].getSingleton(type) : services[i].newInstance());
+    }
+    if (descriptor.singleton && Api.Retain.STRONG == descriptor.retain) {
+      descriptor.cacheAll(services, instances);
+    }
+    return instances;
+  }
+
+  /**
+   * 尝试获取多实现api的所有实现
+   * @param type api接口
+   * @param <T>  类型
+   * @return     所有实现，失败时返回null
+   */
+  public static <T extends API> T[] getAllSafely(Class<T> type) {
+    try {
+      return getAll(type);
+    } catch (ComponentException e) {
+      e.printStackTrace();
+      Log.e(TAG, Log.getStackTraceString(e));
+    }
+    return null;
+  }
+
+  /**
+   * 获取多实现api的广播分发器，调用分发器的方法即依次调用所有实现，有返回值时返回优先级最高的实现的结果；
+   * 单例api的分发器与实现数组一起缓存
+   * @param type api接口，需要声明{@link Api#multiple()}
+   * @param <T>  类型
+   * @return     分发器
+   * @throws ComponentException 相关异常
+   */
+  public static <T extends API> T broadcast(Class<T> type) throws ComponentException {
+    return Broadcaster.obtain(getDescriptor(type), getAll(type));
+  }
+
+  /**
+   * 获取在执行器上并行分发的广播分发器，无返回值的方法对每个实现提交一个任务，有返回值的方法仍然同步分发
+   * @param type     api接口，需要声明{@link Api#multiple()}
+   * @param executor 执行器
+   * @param <T>      类型
+   * @return         分发器
+   * @throws ComponentException 相关异常
+   */
+  public static <T extends API> T broadcast(Class<T> type, Executor executor)
+          throws ComponentException {
+    return Broadcaster.dispatchOn(broadcast(type), type, executor);
+  }
+
+  /**
+   * 载入多实现api所在的所有模块，每个注册索引只查找一次
+   * @param descriptor api描述
+   */
+  private static void loadAllModules(ApiDescriptor descriptor) {
+    ComponentBootstrap.awaitBootstrap();
+    int size = sModuleIndexes.size();
+    int scanned = descriptor.scannedIndexes;
+    if (scanned >= size) {
+      return;
+    }
+    String api = descriptor.api.getName();
+    for (int i = scanned; i < size; i++) {
+      for (ModuleIndex.Module module : sModuleIndexes.get(i).findAll(api)) {
+        loadModule(module);
       }
-      sComponents.put(type, serviceInstance);
-      return serviceInstance;
     }
-    return makeInstance(service, false);
+    descriptor.scannedIndexes = size;
+  }
+
+  /**
+   * 将池化组件的实例放回池中，实现了{@link Recyclable}时先重置；放回后调用者不能再使用该实例
+   * @param type     api接口，需要声明{@link Api#pool()}
+   * @param instance 通过{@link #get(Class)}获取的实例
+   * @param <T>      类型
+   * @return 是否放回池中，没有池化、实例不是当前service的实例或者池已满时返回false
+   */
+  public static <T extends API> boolean recycle(Class<T> type, T instance) {
+    ApiDescriptor descriptor = getDescriptor(type);
+    InstancePool pool = descriptor.pool;
+    ServiceDescriptor service = descriptor.service;
+    if (null == pool || null == instance || null == service
+            || instance.getClass() != service.service) {
+      return false;
+    }
+    if (instance instanceof Recyclable) {
+      ((Recyclable) instance).onRecycle();
+    }
+    return pool.release(instance);
+  }
+
+  /**
+   * 获取池化组件的实例池统计
+   * @param type api接口
+   * @return 统计快照，没有池化时返回null
+   */
+  public static PoolStats getPoolStats(Class<? extends API> type) {
+    InstancePool pool = getDescriptor(type).pool;
+    return null != pool ? pool.getStats() : null;
   }
 
   /**
@@ -150,29 +462,13 @@ public final class Componentization {
    * @param <T>  类型
    * @return     api实现：必须被AService注解修饰
    */
-  @SuppressWarnings("unchecked")
   public static <T extends API> T getLazy(Class<T> apiType) throws ComponentException {
-    Class<T> type = apiType;
-    try {
-      type = null != type.getAnnotation(Service.class)
-              ? type : (Class<T>) sComponentProvider.get(type);
-      if (null == type) {
-        Api apiAnnotation = apiType.getAnnotation(Api.class);
-        assert apiAnnotation != null;
-        if (apiAnnotation.dynamic()) {
-          Log.w(TAG, "动态组件[" + apiType.getCanonicalName() + "]没有Service实现，暂时忽略");
-          return (T) Proxy.newProxyInstance(Thread.currentThread().getContextClassLoader(),
-                  new Class[]{apiType}, sDynamicHandler);
-        }
-      }
-      assert type != null;
-      Class<? extends LazyDelegate<T>> lazyClazz
-              = loadClass(PACKAGE + "." + type.getSimpleName() + LazyDelegate.SUFFIX);
-      return (T) lazyClazz.newInstance();
-    } catch (Exception e) {
-      e.printStackTrace();
+    checkUnscoped(getDescriptor(apiType));
+    T lazy = makeLazy(apiType);
+    if (null == lazy) {
       throw new ComponentException("组件[" + apiType.getCanonicalName() + "]无法支持延迟初始化特性");
     }
+    return lazy;
   }
 
   /**
@@ -182,85 +478,265 @@ public final class Componentization {
    * @return     api实现：必须被AService注解修饰
    */
   public static <T extends API> T getLazySafely(Class<T> type) {
-    try {
-      return getLazy(type);
-    } catch (ComponentException e) {
-      e.printStackTrace();
-      Log.e(TAG, Log.getStackTraceString(e));
-      return getSafely(type);
-    }
+    T lazy = makeLazy(type);
+    return null != lazy ? lazy : getSafely(type);
   }
 
+  /**
+   * 创建延迟初始化代理，代理类构造器缓存在api描述中，包括不存在代理类的情况；
+   * 单例api的代理最终指向同一个实例，所有请求共享一个代理
+   * @param apiType api接口
+   * @return 代理实例，不支持延迟初始化时返回null
+   */
   @SuppressWarnings("unchecked")
-  private static <T extends API> T makeInstance(Class<T> service, boolean singleton)
-          throws ComponentException {
-    try {
-      // kotlin object class
-      Field INSTANCE = service.getDeclaredField("INSTANCE");
-      INSTANCE.setAccessible(true);
-      return (T) INSTANCE.get(null);
-    } catch (Exception e) {
-      e.printStackTrace();
+  private static <T extends API> T makeLazy(Class<T> apiType) {
+    ApiDescriptor descriptor = getDescriptor(apiType);
+    if (!descriptor.scope.isEmpty()) {
+      // 作用域api不创建延迟代理，由非延迟获取报告错误
+      return null;
+    }
+    if (!descriptor.singleton) {
+      return (T) newLazy(descriptor);
+    }
+    API lazy = descriptor.lazyInstance;
+    if (null != lazy) {
+      return (T) lazy;
+    }
+    synchronized (descriptor) {
+      lazy = descriptor.lazyInstance;
+      if (null == lazy) {
+        lazy = newLazy(descriptor);
+        if (null != lazy && null != descriptor.lazy) {
+          // 动态空实现不经过代理，已经单独缓存
+          descriptor.lazyInstance = lazy;
+        }
+      }
+      return (T) lazy;
     }
+  }
+  /**
+   * 声明了作用域的api只能通过{@link ComponentScope}获取，全局获取得到的实例不属于任何作用域，不会随作用域释放
+   * @param descriptor api描述
+   * @throws ComponentException api声明了作用域
+   */
+  private static void checkUnscoped(ApiDescriptor descriptor) throws ComponentException {
+    if (!descriptor.scope.isEmpty()) {
+      throw new ComponentException("组件[" + descriptor.api.getCanonicalName() + "]声明了作用域["
+              + descriptor.scope + "]，需要通过ComponentScope获取");
+    }
+  }
+
 
-    if (!singleton) {
-      return newInstance(service);
+  /**
+   * 创建新的延迟初始化代理
+   * @param descriptor api描述
+   * @return 代理实例，不支持延迟初始化时返回null
+   */
+  private static API newLazy(ApiDescriptor descriptor) {
+    Class<? extends API> apiType = descriptor.api;
+    LazyConstructor lazyConstructor = descriptor.lazy;
+    if (null == lazyConstructor) {
+      ServiceDescriptor service = findService(descriptor);
+      Class<? extends API> type = null != service ? service.service
+              : null != apiType.getAnnotation(Service.class) ? apiType : null;
+      if (null == type) {
+        if (descriptor.dynamic) {
+          return getDynamic(descriptor);
+        }
+        // 还没有注册的组件不做缓存，注册之后可以正常获取
+        return null;
+      }
+      lazyConstructor = LazyConstructor.resolve(type);
+      descriptor.lazy = lazyConstructor;
     }
+    return lazyConstructor.newInstance();
+  }
 
-    // for singleton
-    Field[] fields = service.getDeclaredFields();
-    for (Field field : fields) {
-      Provider provider = field.getAnnotation(Provider.class);
-      if (null == provider) {
-        continue;
+  /**
+   * 获取动态组件的空实现，每个api只创建一次
+   * @param descriptor api描述
+   * @return 编译期生成的空实现，没有生成时退化为动态代理
+   */
+  private static API getDynamic(ApiDescriptor descriptor) {
+    API dynamic = descriptor.dynamicInstance;
+    if (null != dynamic) {
+      return dynamic;
+    }
+    synchronized (descriptor) {
+      dynamic = descriptor.dynamicInstance;
+      if (null != dynamic) {
+        return dynamic;
       }
-      if (!service.isAssignableFrom(field.getType())) {
-        throw new ComponentException("对于Service类" + service.getName()
-                + "而言，被@Provider标记为服务提供者属性\"" + field.getName() + "\"类型不兼容");
+      Class<? extends API> type = descriptor.api;
+      Log.w(TAG, "动态组件[" + type.getCanonicalName() + "]没有Service实现，暂时忽略");
+      Class<?> dynamicClazz = findClass(getGeneratedClassName(type, DYNAMIC_SUFFIX));
+      if (null != dynamicClazz) {
+        try {
+          Constructor<?> constructor = dynamicClazz.getDeclaredConstructor();
+          constructor.setAccessible(true);
+          dynamic = (API) constructor.newInstance();
+        } catch (Exception e) {
+          Log.e(TAG, Log.getStackTraceString(e));
+        }
       }
-      field.setAccessible(true);
-      try {
-        return (T) field.get(null);
-      } catch (IllegalAccessException e) {
-        e.printStackTrace();
+      if (null == dynamic) {
+        dynamic = (API) Proxy.newProxyInstance(type.getClassLoader(),
+                new Class<?>[]{type}, sDynamicHandler);
       }
+      descriptor.dynamicInstance = dynamic;
+      return dynamic;
     }
-    Method[] methods = service.getMethods();
-    for (Method method : methods) {
-      Provider provider = method.getAnnotation(Provider.class);
-      if (null == provider) {
-        continue;
+  }
+  /**
+   * 编译期为api生成的类名，与api同包，嵌套接口以下划线连接外部类名，与注解处理器保持一致
+   * @param api    api接口
+   * @param suffix 生成类后缀
+   * @return 生成类全名
+   */
+  static String getGeneratedClassName(Class<? extends API> api, String suffix) {
+    return api.getName().replace('$', '_') + suffix;
+  }
+
+
+  /**
+   * 返回类型对应的默认值，避免基本类型返回null
+   */
+  static Object getDefaultValue(Class<?> returnType) {
+    if (!returnType.isPrimitive() || void.class == returnType) {
+      return null;
+    }
+    if (boolean.class == returnType) {
+      return false;
+    }
+    if (char.class == returnType) {
+      return '\0';
+    }
+    if (byte.class == returnType) {
+      return (byte) 0;
+    }
+    if (short.class == returnType) {
+      return (short) 0;
+    }
+    if (int.class == returnType) {
+      return 0;
+    }
+    if (long.class == returnType) {
+      return 0L;
+    }
+    if (float.class == returnType) {
+      return 0F;
+    }
+    return 0D;
+  }
+
+  /**
+   * 延迟代理类构造器
+   */
+  static final class LazyConstructor {
+
+    /**
+     * 没有延迟代理类的占位
+     */
+    static final LazyConstructor NONE = new LazyConstructor(null);
+
+    private final Constructor<?> constructor;
+
+    private LazyConstructor(Constructor<?> constructor) {
+      this.constructor = constructor;
+    }
+
+    static LazyConstructor resolve(Class<? extends API> service) {
+      Class<?> lazyClazz = findClass(PACKAGE + "." + service.getSimpleName() + LazyDelegate.SUFFIX);
+      if (null == lazyClazz) {
+        Log.w(TAG, "组件[" + service.getName() + "]没有延迟代理类，降级为非延迟初始化");
+        return NONE;
       }
-      if (method.getParameterTypes().length > 0) {
-        throw new ComponentException("对于Service类" + service.getName()
-                + "而言，被@Provider标记为服务提供者方法\"" + method.getName() + "\"不能有参数");
+      try {
+        Constructor<?> constructor = lazyClazz.getDeclaredConstructor();
+        constructor.setAccessible(true);
+        return new LazyConstructor(constructor);
+      } catch (NoSuchMethodException e) {
+        Log.e(TAG, Log.getStackTraceString(e));
+        return NONE;
       }
-      method.getReturnType();
-      if (!service.isAssignableFrom(method.getReturnType())) {
-        throw new ComponentException("对于Service类" + service.getName()
-                + "而言，被@Provider标记为服务提供者方法\"" + method.getName() + "\"返回类型不兼容");
+    }
+
+    API newInstance() {
+      if (null == constructor) {
+        return null;
       }
-      method.setAccessible(true);
       try {
-        return (T) method.invoke(null);
-      } catch (IllegalAccessException | InvocationTargetException e) {
-        e.printStackTrace();
+        return (API) constructor.newInstance();
+      } catch (Exception e) {
+        Log.e(TAG, Log.getStackTraceString(e));
+        return null;
       }
     }
-    throw new ComponentException(
-            "对于Service类" + service.getName() + "而言，没有找到合适的实例提供者");
   }
 
+  /**
+   * 设置延迟初始化组件创建失败后的重试策略，间隔内直接返回失败结果，不再重复创建和打印异常
+   * @param retryInterval 重试间隔毫秒数，小于0表示从不重试，0表示每次获取都重试
+   */
+  public static void setLazyRetryInterval(long retryInterval) {
+    LazyDelegateImpl.sRetryInterval = retryInterval;
+  }
+
+  /**
+   * 释放所有{@link Api.Retain#RECLAIMABLE}单例，
+   * 下次获取时重建；非Android环境可以在自己的内存监控中调用
+   * @return 释放的实例数量
+   */
+  public static int trimMemory() {
+    int released = 0;
+    for (ServiceDescriptor service : sServices.values()) {
+      if (service.release()) {
+        released++;
+      }
+    }
+    Log.w(TAG, "trimMemory: released " + released + " reclaimable components");
+    return released;
+  }
+
+  /**
+   * 注册系统内存回调，内存紧张或者进入后台时调用{@link #trimMemory()}，重复注册时忽略
+   * @param context 任意上下文，使用其Application注册
+   */
+  public static void registerMemoryCallbacks(Context context) {
+    if (!sMemoryCallbacksRegistered.compareAndSet(false, true)) {
+      return;
+    }
+    context.getApplicationContext().registerComponentCallbacks(new ComponentCallbacks2() {
+      @Override
+      public void onTrimMemory(int level) {
+        // 界面隐藏和运行中的轻度紧张不释放
+        if (level >= TRIM_MEMORY_RUNNING_LOW && level != TRIM_MEMORY_UI_HIDDEN) {
+          trimMemory();
+        }
+      }
+
+      @Override
+      public void onConfigurationChanged(Configuration newConfig) {
+      }
+
+      @Override
+      public void onLowMemory() {
+        trimMemory();
+      }
+    });
+  }
+
+  /**
+   * 从指定ClassLoader载入类，找不到时退化为默认的查找方式
+   */
   @SuppressWarnings("unchecked")
-  private static <T extends API> T newInstance(Class<T> service) throws ComponentException {
+  private static <T> Class<T> loadClass(String className, ClassLoader classLoader)
+          throws ComponentException {
     try {
-      Constructor<? extends API> constructor = service.getDeclaredConstructor();
-      constructor.setAccessible(true);
-      return (T) constructor.newInstance();
-    } catch (Exception e) {
-      e.printStackTrace();
+      return (Class<T>) Class.forName(className, true, classLoader);
+    } catch (ClassNotFoundException ignored) {
     }
-    throw new ComponentException("对于Service类" + service.getName() + "而言，没有找到合适的实例构造器");
+    return loadClass(className);
   }
 
   @SuppressWarnings("unchecked")
@@ -281,56 +757,137 @@ public final class Componentization {
     return clazz;
   }
 
+  /**
+   * 查找类，找不到时返回null，不打印异常
+   */
+  private static Class<?> findClass(String className) {
+    try {
+      return Class.forName(className);
+    } catch (ClassNotFoundException ignored) {
+    }
+    try {
+      ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+      return null == classLoader ? null : classLoader.loadClass(className);
+    } catch (ClassNotFoundException ignored) {
+    }
+    return null;
+  }
+
   static {
+    if (ComponentBootstrap.markStarted(false)) {
+      bootstrap();
+    }
+  }
+
+  /**
+   * 载入所有模块注册器并冻结描述表，然后开始提前初始化，同步模式在类初始化时执行，异步模式在后台线程执行
+   */
+  static void bootstrap() {
     try {
-      for (Class<? extends ComponentRegister> registerClazz : loadModuleRegisters()) {
-        register(registerClazz);
-      }
+      ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+      boolean indexed = registerByIndex();
+      loadModuleIndex(null != classLoader ? classLoader : Componentization.class.getClassLoader(),
+              ComponentBootstrap.getAssets(), indexed);
+      freeze();
+      EagerInitializer.start(snapshotDescriptors());
     } catch (Exception e) {
       e.printStackTrace();
     }
   }
 
   /**
-   * 从注解处理器生成的组件注册属性文件中反射载入注册类
-   * @return 返回
+   * 通过插件生成的注册索引直接注册启动时需要载入的模块，按需载入的模块不在索引中
+   * @return 是否存在注册索引
    */
-  private static Set<Class<? extends ComponentRegister>> loadModuleRegisters() {
-    Log.e(TAG, "loadModuleRegisters....");
-    InputStream propertyStream =
-            Objects.requireNonNull(Thread.currentThread().getContextClassLoader())
-            .getResourceAsStream("module-register.properties");
-    if (null == propertyStream) {
-      Log.e(TAG, "loadModuleRegisters failed, properties file not found");
-      return Collections.emptySet();
+  private static boolean registerByIndex() {
+    Class<?> indexClazz = findClass(ComponentIndex.CLASS_NAME);
+    if (null == indexClazz) {
+      return false;
     }
-    Properties properties = new Properties();
     try {
-      properties.load(propertyStream);
-    } catch (IOException e) {
-      e.printStackTrace();
-      Log.e(TAG, "loadModuleRegisters failed, properties file can't load: "
-              + e.getLocalizedMessage());
-      return Collections.emptySet();
-    }
-    Set<Class<? extends ComponentRegister>> registers = new HashSet<>();
-    for (Object key : properties.keySet()) {
-      String module = key.toString();
-      Log.e(TAG, "loadModuleRegisters key: " + module);
-      String classes = properties.getProperty(module);
-      if (TextUtils.isEmpty(classes)) {
+      ComponentIndex index = (ComponentIndex) indexClazz.getDeclaredConstructor().newInstance();
+      for (Class<? extends ComponentRegister> register : index.getRegisters()) {
+        register(register);
+      }
+      return true;
+    } catch (Exception e) {
+      Log.e(TAG, Log.getStackTraceString(e));
+      return false;
+    }
+  }
+
+  /**
+   * 附加ClassLoader，如插件或者动态载入的jar，只读取其中新增的注册属性文件，不会重新扫描已经读取的文件；
+   * 其中的模块与启动时一样按需载入
+   * @param classLoader 插件ClassLoader
+   */
+  public static void attachClassLoader(ClassLoader classLoader) {
+    if (!loadModuleIndex(classLoader, null, false)) {
+      return;
+    }
+    EagerInitializer.start(snapshotDescriptors());
+  }
+
+  /**
+   * 读取ClassLoader中所有注解处理器生成的组件注册属性文件，建立按模块分片的注册索引，
+   * 只载入启动时需要的模块
+   * @param classLoader 读取资源和载入注册类的ClassLoader
+   * @param assets      应用assets，其中有二进制注册表时优先使用，可以为null
+   * @param registered  启动模块是否已经由注册索引注册，是时只标记为已载入
+   * @return 是否读取到新的模块
+   */
+  private static boolean loadModuleIndex(ClassLoader classLoader, AssetManager assets,
+                                         boolean registered) {
+    Log.e(TAG, "loadModuleIndex: " + classLoader);
+    ModuleIndex moduleIndex;
+    synchronized (sRegisterResources) {
+      moduleIndex = ModuleIndex.load(classLoader, assets, sRegisterResources);
+    }
+    if (moduleIndex.getModules().isEmpty()) {
+      Log.e(TAG, "loadModuleIndex failed, properties file not found");
+      return false;
+    }
+    for (ModuleIndex.Module module : moduleIndex.getModules()) {
+      if (!module.isBootstrap()) {
         continue;
       }
-      for (String clazzName : classes.split(",\\n*")) {
+      if (registered) {
+        module.loaded = true;
+      } else {
+        loadModule(module);
+      }
+    }
+    sModuleIndexes.add(moduleIndex);
+    Log.e(TAG, "loadModuleIndex completed");
+    return true;
+  }
+
+  /**
+   * 载入模块的所有注册类，每个模块只载入一次
+   * @param module 模块分片
+   */
+  private static void loadModule(ModuleIndex.Module module) {
+    if (module.loaded) {
+      return;
+    }
+    synchronized (module) {
+      if (module.loaded) {
+        return;
+      }
+      Log.e(TAG, "loadModule: " + module.name);
+      for (String clazzName : module.registers) {
         try {
-          registers.add(loadClass(clazzName));
+          register(Componentization.<ComponentRegister>loadClass(clazzName, module.classLoader));
         } catch (Exception e) {
           Log.e(TAG, "loadClass [" + clazzName + "] failed");
         }
       }
+      module.loaded = true;
+    }
+    if (null != sFrozen) {
+      // 启动冻结之后载入的模块，把新注册的api合并进冻结表
+      freeze();
     }
-    Log.e(TAG, "loadModuleRegisters completed");
-    return registers;
   }
 
 }
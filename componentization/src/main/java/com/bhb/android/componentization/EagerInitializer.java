@@ -0,0 +1,200 @@
+package com.bhb.android.componentization;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 提前初始化{@link com.bhb.android.componentization.annotation.Api#eager()}单例，
+ * 按照编译期收集的构造依赖拓扑排序，在有限的工作线程中并行创建互不依赖的分支
+ */
+final class EagerInitializer {
+
+  /**
+   * Log tag
+   */
+  private static final String TAG = "EagerInitializer";
+  /**
+   * 工作线程名前缀
+   */
+  private static final String THREAD_NAME = "Componentization-eager-";
+  /**
+   * 空闲工作线程的存活时间，毫秒
+   */
+  private static final long KEEP_ALIVE = 1000;
+
+  /**
+   * 依赖图节点，每个单例service一个
+   */
+  private static final class Node {
+
+    final ServiceDescriptor service;
+    /**
+     * 请求单例时使用的api
+     */
+    final Class<? extends API> api;
+    /**
+     * 依赖当前节点的节点
+     */
+    final Set<Node> dependents = new LinkedHashSet<>();
+    /**
+     * 还没有创建完成的依赖数量
+     */
+    final AtomicInteger pending = new AtomicInteger();
+
+    Node(ServiceDescriptor service, Class<? extends API> api) {
+      this.service = service;
+      this.api = api;
+    }
+  }
+
+  private final ThreadPoolExecutor executor;
+  private final AtomicInteger remaining;
+
+  private EagerInitializer(int parallelism, int nodes) {
+    AtomicInteger threadIndex = new AtomicInteger();
+    this.executor = new ThreadPoolExecutor(parallelism, parallelism,
+            KEEP_ALIVE, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), runnable -> {
+      Thread thread = new Thread(runnable, THREAD_NAME + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.executor.allowCoreThreadTimeOut(true);
+    this.remaining = new AtomicInteger(nodes);
+  }
+
+  /**
+   * 开始提前初始化，立即返回
+   * @param descriptors 当前的api描述表
+   */
+  static void start(Map<Class<? extends API>, ApiDescriptor> descriptors) {
+    Map<ServiceDescriptor, Node> graph = buildGraph(descriptors);
+    if (graph.isEmpty()) {
+      return;
+    }
+    List<Node> orderable = sort(graph.values());
+    if (orderable.size() < graph.size()) {
+      for (Node node : graph.values()) {
+        if (!orderable.contains(node)) {
+          Log.w(TAG, "组件[" + node.service.service.getName() + "]存在循环构造依赖，跳过提前初始化");
+        }
+      }
+    }
+    if (orderable.isEmpty()) {
+      return;
+    }
+    int parallelism = Math.max(1, Math.min(orderable.size(),
+            Runtime.getRuntime().availableProcessors() - 1));
+    EagerInitializer initializer = new EagerInitializer(parallelism, orderable.size());
+    // 先确定根节点再提交，提交后依赖者的计数会被工作线程并发归零，不能在提交过程中判断
+    List<Node> roots = new ArrayList<>();
+    for (Node node : orderable) {
+      if (node.pending.get() == 0) {
+        roots.add(node);
+      }
+    }
+    for (Node root : roots) {
+      initializer.submit(root);
+    }
+  }
+
+  /**
+   * 建立提前初始化单例及其传递单例依赖的依赖图，非单例依赖在构造时直接创建，不参与排序
+   */
+  private static Map<ServiceDescriptor, Node> buildGraph(
+          Map<Class<? extends API>, ApiDescriptor> descriptors) {
+    Map<ServiceDescriptor, Node> graph = new LinkedHashMap<>();
+    Deque<Node> pending = new ArrayDeque<>();
+    for (ApiDescriptor descriptor : descriptors.values()) {
+      ServiceDescriptor service = descriptor.service;
+      if (descriptor.eager && null != service && !graph.containsKey(service)) {
+        Node node = new Node(service, descriptor.api);
+        graph.put(service, node);
+        pending.add(node);
+      }
+    }
+    while (!pending.isEmpty()) {
+      Node node = pending.poll();
+      for (Class<? extends API> dependency : node.service.dependencies) {
+        ApiDescriptor descriptor = descriptors.get(dependency);
+        ServiceDescriptor service = null != descriptor ? descriptor.service : null;
+        if (null == service || !descriptor.singleton) {
+          continue;
+        }
+        Node dependencyNode = graph.get(service);
+        if (null == dependencyNode) {
+          dependencyNode = new Node(service, dependency);
+          graph.put(service, dependencyNode);
+          pending.add(dependencyNode);
+        }
+        if (dependencyNode != node && dependencyNode.dependents.add(node)) {
+          node.pending.incrementAndGet();
+        }
+      }
+    }
+    return graph;
+  }
+
+  /**
+   * 拓扑排序，只检查顺序不修改节点状态
+   * @return 可以排序的节点，循环依赖中的节点及依赖它们的节点不在其中
+   */
+  private static List<Node> sort(Iterable<Node> nodes) {
+    Map<Node, Integer> inDegrees = new HashMap<>();
+    Deque<Node> ready = new ArrayDeque<>();
+    for (Node node : nodes) {
+      inDegrees.put(node, node.pending.get());
+      if (node.pending.get() == 0) {
+        ready.add(node);
+      }
+    }
+    List<Node> sorted = new ArrayList<>(inDegrees.size());
+    while (!ready.isEmpty()) {
+      Node node = ready.poll();
+      sorted.add(node);
+      for (Node dependent : node.dependents) {
+        int inDegree = inDegrees.get(dependent) - 1;
+        inDegrees.put(dependent, inDegree);
+        if (inDegree == 0) {
+          ready.add(dependent);
+        }
+      }
+    }
+    return sorted;
+  }
+
+  private void submit(Node node) {
+    executor.execute(() -> {
+      try {
+        if (!node.service.isCreated()) {
+          node.service.getSingleton(node.api);
+        }
+      } catch (Exception e) {
+        // 失败时依赖者仍然继续，在构造时按需获取依赖
+        Log.e(TAG, Log.getStackTraceString(e));
+      } finally {
+        for (Node dependent : node.dependents) {
+          if (dependent.pending.decrementAndGet() == 0) {
+            submit(dependent);
+          }
+        }
+        if (remaining.decrementAndGet() == 0) {
+          executor.shutdown();
+        }
+      }
+    });
+  }
+
+}
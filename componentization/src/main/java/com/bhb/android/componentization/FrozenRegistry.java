@@ -0,0 +1,159 @@
+package com.bhb.android.componentization;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 冻结后的api描述表，启动注册完成和每次载入模块后构建完美散列(hash and displace)：
+ * 先按散列值分桶，再为每个桶找到一个位移种子，使所有api落到互不冲突的槽位；
+ * 使用平行数组存储，查询只需要读一次种子和一次槽位，没有桶遍历和包装节点
+ */
+final class FrozenRegistry {
+
+  /**
+   * 每个桶尝试的最大种子数
+   */
+  private static final int MAX_SEED = 1 << 16;
+  /**
+   * 表容量相对于最小容量最多扩大的次数
+   */
+  private static final int MAX_GROW = 3;
+
+  private final int[] seeds;
+  private final int bucketShift;
+  private final Class<?>[] apis;
+  private final ApiDescriptor[] descriptors;
+  private final int slotShift;
+
+  private FrozenRegistry(int[] seeds, int bucketShift,
+                         Class<?>[] apis, ApiDescriptor[] descriptors, int slotShift) {
+    this.seeds = seeds;
+    this.bucketShift = bucketShift;
+    this.apis = apis;
+    this.descriptors = descriptors;
+    this.slotShift = slotShift;
+  }
+
+  /**
+   * 构建冻结表
+   * @param descriptors api描述集合
+   * @return 冻结表，找不到完美散列时返回null
+   */
+  static FrozenRegistry build(Collection<ApiDescriptor> descriptors) {
+    List<ApiDescriptor> entries = new ArrayList<>(descriptors);
+    int size = entries.size();
+    // 平均每个桶两个api，槽位负载不超过一半
+    int bucketBits = bits(Math.max(1, size / 2));
+    for (int slotBits = bits(size * 2); slotBits <= bits(size * 2) + MAX_GROW; slotBits++) {
+      FrozenRegistry frozen = build(entries, bucketBits, slotBits);
+      if (null != frozen) {
+        return frozen;
+      }
+    }
+    return null;
+  }
+
+  private static FrozenRegistry build(List<ApiDescriptor> entries, int bucketBits, int slotBits) {
+    int bucketShift = 32 - bucketBits;
+    int slotShift = 32 - slotBits;
+    List<List<ApiDescriptor>> buckets = new ArrayList<>(1 << bucketBits);
+    for (int i = 0; i < 1 << bucketBits; i++) {
+      buckets.add(new ArrayList<>(2));
+    }
+    for (ApiDescriptor entry : entries) {
+      buckets.get(bucket(entry.api.hashCode(), bucketShift)).add(entry);
+    }
+    // 先放置大桶，冲突概率更低
+    List<List<ApiDescriptor>> sortedBuckets = new ArrayList<>(buckets);
+    Collections.sort(sortedBuckets, (b1, b2) -> b2.size() - b1.size());
+    int[] seeds = new int[1 << bucketBits];
+    Class<?>[] apis = new Class<?>[1 << slotBits];
+    ApiDescriptor[] descriptors = new ApiDescriptor[1 << slotBits];
+    int[] slots = new int[sortedBuckets.isEmpty() ? 0 : sortedBuckets.get(0).size()];
+    for (List<ApiDescriptor> bucket : sortedBuckets) {
+      if (bucket.isEmpty()) {
+        break;
+      }
+      int seed = 0;
+      for (; seed < MAX_SEED; seed++) {
+        if (tryPlace(bucket, seed, slotShift, apis, slots)) {
+          break;
+        }
+      }
+      if (seed == MAX_SEED) {
+        return null;
+      }
+      for (int i = 0; i < bucket.size(); i++) {
+        apis[slots[i]] = bucket.get(i).api;
+        descriptors[slots[i]] = bucket.get(i);
+      }
+      seeds[bucket(bucket.get(0).api.hashCode(), bucketShift)] = seed;
+    }
+    return new FrozenRegistry(seeds, bucketShift, apis, descriptors, slotShift);
+  }
+
+  private static boolean tryPlace(List<ApiDescriptor> bucket, int seed, int slotShift,
+                                  Class<?>[] apis, int[] slots) {
+    for (int i = 0; i < bucket.size(); i++) {
+      int slot = slot(bucket.get(i).api.hashCode(), seed, slotShift);
+      if (null != apis[slot]) {
+        return false;
+      }
+      for (int j = 0; j < i; j++) {
+        if (slots[j] == slot) {
+          return false;
+        }
+      }
+      slots[i] = slot;
+    }
+    return true;
+  }
+
+  /**
+   * 查询api描述
+   * @param api api接口
+   * @return 描述，冻结之后才出现的api返回null
+   */
+  ApiDescriptor get(Class<?> api) {
+    int hash = api.hashCode();
+    int slot = slot(hash, seeds[bucket(hash, bucketShift)], slotShift);
+    return apis[slot] == api ? descriptors[slot] : null;
+  }
+
+  /**
+   * 表中所有api描述，新增api后与新描述合并重建
+   */
+  List<ApiDescriptor> getDescriptors() {
+    List<ApiDescriptor> entries = new ArrayList<>();
+    for (ApiDescriptor descriptor : descriptors) {
+      if (null != descriptor) {
+        entries.add(descriptor);
+      }
+    }
+    return entries;
+  }
+
+  private static int bucket(int hash, int bucketShift) {
+    return (hash * 0x9E3779B9) >>> bucketShift;
+  }
+
+  private static int slot(int hash, int seed, int slotShift) {
+    int h = hash + seed * 0x61C88647;
+    h ^= h >>> 16;
+    h *= 0x85EBCA6B;
+    h ^= h >>> 13;
+    h *= 0xC2B2AE35;
+    h ^= h >>> 16;
+    return h >>> slotShift;
+  }
+
+  /**
+   * 容纳指定数量所需的二进制位数，至少为1
+   */
+  private static int bits(int count) {
+    return Math.max(1, 32 - Integer.numberOfLeadingZeros(Math.max(1, count - 1)));
+  }
+
+}
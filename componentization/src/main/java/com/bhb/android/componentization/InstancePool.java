@@ -0,0 +1,79 @@
+package com.bhb.android.componentization;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 非单例api的有界实例池，固定数量的槽位以CAS存取，不加锁也不分配节点；
+ * 每个线程从不同的槽位开始查找，减少并发时的冲突
+ */
+final class InstancePool {
+
+  private final AtomicReferenceArray<API> slots;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  InstancePool(int capacity) {
+    this.slots = new AtomicReferenceArray<>(capacity);
+  }
+
+  /**
+   * 取出空闲实例
+   * @return 实例，池中没有时返回null并记录一次未命中
+   */
+  API acquire() {
+    int length = slots.length();
+    int start = startIndex(length);
+    for (int i = 0; i < length; i++) {
+      int index = (start + i) % length;
+      API instance = slots.get(index);
+      if (null != instance && slots.compareAndSet(index, instance, null)) {
+        hits.incrementAndGet();
+        return instance;
+      }
+    }
+    misses.incrementAndGet();
+    return null;
+  }
+
+  /**
+   * 放回实例
+   * @param instance 已经重置的实例
+   * @return 是否放入，池满时返回false，实例直接丢弃
+   */
+  boolean release(API instance) {
+    int length = slots.length();
+    int start = startIndex(length);
+    for (int i = 0; i < length; i++) {
+      int index = (start + i) % length;
+      if (null == slots.get(index) && slots.compareAndSet(index, null, instance)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * 丢弃所有空闲实例，重新绑定service时调用
+   */
+  void clear() {
+    for (int i = 0, length = slots.length(); i < length; i++) {
+      slots.set(i, null);
+    }
+  }
+
+  PoolStats getStats() {
+    int size = 0;
+    for (int i = 0, length = slots.length(); i < length; i++) {
+      if (null != slots.get(i)) {
+        size++;
+      }
+    }
+    return new PoolStats(slots.length(), size, hits.get(), misses.get());
+  }
+
+  private static int startIndex(int length) {
+    return (int) (Thread.currentThread().getId() % length);
+  }
+
+}
@@ -1,35 +1,147 @@
 package com.bhb.android.componentization;
 
+import com.bhb.android.componentization.annotation.Api;
+
 import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
- * 这样的空构造是为了反射到实际类型参数，具体使用的地方构造一个匿名类来保留类型信息
+ * 延迟初始化代理实现，生成代码直接传入API类型；
+ * 兼容旧的匿名子类写法，空构造会反射到实际类型参数，并按代理类型缓存
  * @param <C> API类型
  */
-abstract class LazyDelegateImpl<C extends API> implements LazyDelegate<C> {
+class LazyDelegateImpl<C extends API> implements LazyDelegate<C> {
+
+  /**
+   * 创建失败后从不重试
+   */
+  static final long RETRY_NEVER = -1;
+  /**
+   * 创建失败后每次获取都重试
+   */
+  static final long RETRY_ALWAYS = 0;
+  /**
+   * 创建失败后的默认重试间隔，单位毫秒
+   */
+  static final long DEFAULT_RETRY_INTERVAL = 1000;
+  /**
+   * 未发生失败的标记
+   */
+  private static final long NO_FAILURE = Long.MIN_VALUE;
 
+  /**
+   * 按匿名代理类型缓存的API类型
+   */
+  private static final Map<Class<?>, Class<? extends API>> sAPIClasses =
+          new ConcurrentHashMap<>();
+  /**
+   * 创建失败后的重试间隔，单位毫秒
+   */
+  static volatile long sRetryInterval = DEFAULT_RETRY_INTERVAL;
+
+  /**
+   * API类型
+   */
+  private final Class<? extends API> apiClass;
+  /**
+   * 是否缓存组件实例，非强引用的单例可能被释放重建，每次都从注册表获取
+   */
+  private final boolean retained;
   /**
    * 组件实例
    */
   private volatile C api;
+  /**
+   * 最近一次创建失败的时间{@link System#nanoTime()}
+   */
+  private volatile long failedAt = NO_FAILURE;
+
+  protected LazyDelegateImpl() {
+    this.apiClass = getAPIClass(getClass());
+    this.retained = isRetained(apiClass);
+  }
+
+  LazyDelegateImpl(Class<? extends API> apiClass) {
+    this.apiClass = apiClass;
+    this.retained = isRetained(apiClass);
+  }
+
+  private static boolean isRetained(Class<? extends API> apiClass) {
+    return Api.Retain.STRONG == Componentization.getDescriptor(apiClass).retain;
+  }
 
   @SuppressWarnings("unchecked")
-  private Class<C> getAPIClass() {
-    return (Class<C>) ((ParameterizedType) Objects.requireNonNull(getClass()
+  private static Class<? extends API> getAPIClass(Class<?> delegateClass) {
+    Class<? extends API> apiClass = sAPIClasses.get(delegateClass);
+    if (null != apiClass) {
+      return apiClass;
+    }
+    Type type = ((ParameterizedType) Objects.requireNonNull(delegateClass
             .getGenericSuperclass())).getActualTypeArguments()[0];
+    if (type instanceof ParameterizedType) {
+      type = ((ParameterizedType) type).getRawType();
+    }
+    apiClass = (Class<? extends API>) type;
+    sAPIClasses.put(delegateClass, apiClass);
+    return apiClass;
   }
 
+  @SuppressWarnings("unchecked")
   @Override
   public C create() {
-    return Componentization.getSafely(getAPIClass());
+    return (C) Componentization.getSafely(apiClass);
   }
 
   @Override
-  public synchronized C get() {
-    if (null == api) {
+  public C get() {
+    C api = this.api;
+    if (null != api) {
+      return api;
+    }
+    if (!shouldRetry()) {
+      return null;
+    }
+    if (!retained) {
       api = create();
+      if (null == api) {
+        failedAt = System.nanoTime();
+      }
+      return api;
+    }
+    synchronized (this) {
+      api = this.api;
+      if (null != api) {
+        return api;
+      }
+      if (!shouldRetry()) {
+        return null;
+      }
+      api = create();
+      if (null == api) {
+        failedAt = System.nanoTime();
+      } else {
+        this.api = api;
+      }
+      return api;
+    }
+  }
+
+  /**
+   * 根据重试策略判断是否可以再次创建
+   */
+  private boolean shouldRetry() {
+    long failedAt = this.failedAt;
+    if (NO_FAILURE == failedAt) {
+      return true;
+    }
+    long retryInterval = sRetryInterval;
+    if (retryInterval < 0) {
+      return false;
     }
-    return api;
+    return System.nanoTime() - failedAt >= TimeUnit.MILLISECONDS.toNanos(retryInterval);
   }
 }
@@ -0,0 +1,293 @@
+package com.bhb.android.componentization;
+
+import android.content.res.AssetManager;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * 模块注册索引，每个ClassLoader一个，按模块名分片保存注册类，并记录api到模块的映射；
+ * 有api索引的模块只在其中的api首次被请求时载入，没有索引的模块(旧版本注解处理器生成)启动时载入
+ */
+final class ModuleIndex {
+
+  /**
+   * Log tag
+   */
+  private static final String TAG = "ModuleIndex";
+  /**
+   * 注解处理器生成的注册属性文件，同一位置有二进制注册表时使用二进制注册表
+   */
+  static final String REGISTER_FILE = "module-register.properties";
+
+  /**
+   * 模块api索引的键后缀，与注解处理器保持一致
+   */
+  static final String APIS_SUFFIX = "@apis";
+  /**
+   * 模块是否包含提前初始化api的键后缀，与注解处理器保持一致
+   */
+  static final String EAGER_SUFFIX = "@eager";
+
+  /**
+   * 模块注册分片
+   */
+  static final class Module {
+
+    /**
+     * 模块名
+     */
+    final String name;
+    /**
+     * 载入注册类使用的ClassLoader
+     */
+    final ClassLoader classLoader;
+    /**
+     * 注册类名
+     */
+    final List<String> registers;
+    /**
+     * 是否有api索引，没有索引的模块无法按需载入
+     */
+    final boolean indexed;
+    /**
+     * 是否包含提前初始化的api，需要在启动时载入
+     */
+    final boolean eager;
+    /**
+     * 是否已经载入
+     */
+    volatile boolean loaded;
+
+    Module(String name, ClassLoader classLoader, List<String> registers,
+           boolean indexed, boolean eager) {
+      this.name = name;
+      this.classLoader = classLoader;
+      this.registers = registers;
+      this.indexed = indexed;
+      this.eager = eager;
+    }
+
+    /**
+     * 是否需要在启动时载入
+     */
+    boolean isBootstrap() {
+      return !indexed || eager;
+    }
+  }
+
+  /**
+   * 所属ClassLoader
+   */
+  final ClassLoader classLoader;
+  private final List<Module> modules = new ArrayList<>();
+  /**
+   * 已经建立的模块名，assets中的注册表与打包的注册属性文件内容相同，同名模块只保留先读取的
+   */
+  private final Set<String> moduleNames = new HashSet<>();
+  /**
+   * api到所在模块的映射，多实现api可以分布在多个模块中
+   */
+  private final Map<String, List<Module>> apiModules = new HashMap<>();
+  /**
+   * 二进制注册表，api索引直接在其中查找
+   */
+  private final List<RegistryFile> registryFiles = new ArrayList<>();
+  /**
+   * 二进制注册表中第一个模块在{@link #modules}中的位置
+   */
+  private final List<Integer> registryBases = new ArrayList<>();
+
+  private ModuleIndex(ClassLoader classLoader) {
+    this.classLoader = classLoader;
+  }
+
+  /**
+   * 读取ClassLoader中所有的注册属性文件并建立索引，不载入注册类
+   * @param classLoader 读取资源和载入注册类的ClassLoader
+   * @param assets      应用assets，其中有未压缩的二进制注册表时优先映射，可以为null
+   * @param resources   已经读取过的资源地址，父ClassLoader中的资源会重复出现，跳过这些资源；
+   *                    新读取的资源会加入其中，调用者需要保证同步
+   * @return 索引，没有新的注册属性文件时没有模块
+   */
+  static ModuleIndex load(ClassLoader classLoader, AssetManager assets, Set<String> resources) {
+    ModuleIndex moduleIndex = new ModuleIndex(classLoader);
+    if (null != assets) {
+      try {
+        RegistryFile registryFile = RegistryFile.open(assets);
+        if (null != registryFile) {
+          moduleIndex.parse(registryFile);
+        } else {
+          Log.w(TAG, "registry asset not found or compressed, fall back to properties");
+        }
+      } catch (IOException e) {
+        Log.e(TAG, "load failed, registry asset can't open: " + e.getLocalizedMessage());
+      }
+    }
+    Enumeration<URL> urls;
+    try {
+      urls = classLoader.getResources(RegistryFile.REGISTER_FILE);
+    } catch (IOException e) {
+      Log.e(TAG, "load failed, registry file can't find: " + e.getLocalizedMessage());
+      urls = Collections.emptyEnumeration();
+    }
+    while (urls.hasMoreElements()) {
+      URL url = urls.nextElement();
+      if (!resources.add(url.toString())) {
+        continue;
+      }
+      RegistryFile registryFile;
+      try {
+        registryFile = RegistryFile.open(url);
+      } catch (IOException e) {
+        Log.e(TAG, "load failed, registry file can't open: " + url
+                + ", " + e.getLocalizedMessage());
+        continue;
+      }
+      if (null == registryFile) {
+        Log.w(TAG, "registry file not mappable or format mismatch: " + url);
+        continue;
+      }
+      // 同一位置的属性文件内容相同，不再读取
+      String urlString = url.toString();
+      resources.add(urlString.substring(0, urlString.length() - RegistryFile.REGISTER_FILE.length())
+              + REGISTER_FILE);
+      moduleIndex.parse(registryFile);
+    }
+    try {
+      urls = classLoader.getResources(REGISTER_FILE);
+    } catch (IOException e) {
+      Log.e(TAG, "load failed, properties file can't find: " + e.getLocalizedMessage());
+      return moduleIndex;
+    }
+    while (urls.hasMoreElements()) {
+      URL url = urls.nextElement();
+      if (!resources.add(url.toString())) {
+        continue;
+      }
+      Properties properties = new Properties();
+      try (InputStream propertyStream = url.openStream()) {
+        properties.load(propertyStream);
+      } catch (IOException e) {
+        Log.e(TAG, "load failed, properties file can't load: " + url
+                + ", " + e.getLocalizedMessage());
+        continue;
+      }
+      moduleIndex.parse(properties);
+    }
+    return moduleIndex;
+  }
+
+  /**
+   * 从注册属性中解析模块
+   * @param properties module-register.properties内容
+   */
+  private void parse(Properties properties) {
+    for (String key : properties.stringPropertyNames()) {
+      if (key.endsWith(APIS_SUFFIX) || key.endsWith(EAGER_SUFFIX) || !moduleNames.add(key)) {
+        continue;
+      }
+      String apis = properties.getProperty(key + APIS_SUFFIX);
+      Module module = new Module(key, classLoader, split(properties.getProperty(key)),
+              null != apis, Boolean.parseBoolean(properties.getProperty(key + EAGER_SUFFIX)));
+      modules.add(module);
+      for (String api : split(apis)) {
+        List<Module> indexed = apiModules.get(api);
+        if (null == indexed) {
+          indexed = new ArrayList<>(1);
+          apiModules.put(api, indexed);
+        }
+        indexed.add(module);
+      }
+    }
+  }
+
+  /**
+   * 从二进制注册表中建立模块，api索引保留在注册表中
+   * @param registryFile 二进制注册表
+   */
+  private void parse(RegistryFile registryFile) {
+    registryFiles.add(registryFile);
+    registryBases.add(modules.size());
+    for (int i = 0, count = registryFile.getModuleCount(); i < count; i++) {
+      int flags = registryFile.getModuleFlags(i);
+      String name = registryFile.getModuleName(i);
+      moduleNames.add(name);
+      modules.add(new Module(name, classLoader,
+              registryFile.getRegisters(i), (flags & RegistryFile.FLAG_INDEXED) != 0,
+              (flags & RegistryFile.FLAG_EAGER) != 0));
+    }
+  }
+
+  private static List<String> split(String value) {
+    if (TextUtils.isEmpty(value)) {
+      return Collections.emptyList();
+    }
+    List<String> values = new ArrayList<>(Arrays.asList(value.split(",\\n*")));
+    values.removeAll(Collections.singleton(""));
+    return values;
+  }
+
+  /**
+   * 所有模块
+   */
+  Collection<Module> getModules() {
+    return modules;
+  }
+
+  /**
+   * 查找api的service所在的模块
+   * @param api api类名
+   * @return 模块，没有索引时返回null
+   */
+  Module find(String api) {
+    List<Module> indexed = apiModules.get(api);
+    if (null != indexed) {
+      return indexed.get(0);
+    }
+    for (int i = 0, size = registryFiles.size(); i < size; i++) {
+      int index = registryFiles.get(i).findModule(api);
+      if (index >= 0) {
+        return modules.get(registryBases.get(i) + index);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * 查找api的service所在的所有模块
+   * @param api api类名
+   * @return 模块列表，没有索引时为空
+   */
+  List<Module> findAll(String api) {
+    List<Module> result = new ArrayList<>();
+    List<Module> indexed = apiModules.get(api);
+    if (null != indexed) {
+      result.addAll(indexed);
+    }
+    List<Integer> indexes = new ArrayList<>();
+    for (int i = 0, size = registryFiles.size(); i < size; i++) {
+      indexes.clear();
+      registryFiles.get(i).findModules(api, indexes);
+      for (int index : indexes) {
+        result.add(modules.get(registryBases.get(i) + index));
+      }
+    }
+    return result;
+  }
+
+}
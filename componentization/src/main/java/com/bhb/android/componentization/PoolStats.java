@@ -0,0 +1,57 @@
+package com.bhb.android.componentization;
+
+/**
+ * 组件实例池的统计快照
+ */
+public final class PoolStats {
+
+  private final int capacity;
+  private final int size;
+  private final long hits;
+  private final long misses;
+
+  PoolStats(int capacity, int size, long hits, long misses) {
+    this.capacity = capacity;
+    this.size = size;
+    this.hits = hits;
+    this.misses = misses;
+  }
+
+  /**
+   * 池容量
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * 当前池中的空闲实例数量
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * 从池中取得实例的次数
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * 池中没有空闲实例而新建的次数
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+  @Override
+  public String toString() {
+    return "PoolStats{" +
+            "capacity=" + capacity +
+            ", size=" + size +
+            ", hits=" + hits +
+            ", misses=" + misses +
+            '}';
+  }
+}
@@ -0,0 +1,14 @@
+package com.bhb.android.componentization;
+
+/**
+ * 池化组件可选实现的回收接口，实例通过{@link Componentization#recycle(Class, API)}放回池中之前调用，
+ * 用于清理上一次使用留下的状态
+ */
+public interface Recyclable {
+
+  /**
+   * 重置实例状态
+   */
+  void onRecycle();
+
+}
@@ -0,0 +1,245 @@
+package com.bhb.android.componentization;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * 构建时生成的二进制注册表，只读访问，名称在首次使用时才解码；
+ * 插件以不压缩的asset打包进apk，运行时直接内存映射apk中的对应区域，多进程共享同一份页缓存；
+ * 非Android环境只映射文件资源，打包在jar中的资源无法映射，由注册属性文件代替
+ *
+ * <pre>
+ * int   magic, version
+ * int   nameCount,   int[nameCount] nameOffset            名称表，偏移指向[u16长度][utf-8字节]
+ * int   moduleCount, {name, flags, registerStart, registerCount}[moduleCount]
+ * int   registerCount, int[registerCount] name             各模块注册类连续存放
+ * int   apiCount,    {hash, name, module}[apiCount]         按名称hash排序的api到模块索引
+ * </pre>
+ * 格式与插件中的写入保持一致，整数均为大端序
+ */
+final class RegistryFile {
+
+  /**
+   * 生成的注册表文件
+   */
+  static final String REGISTER_FILE = "module-register.bin";
+
+  private static final int MAGIC = 0x434D5052;
+  private static final int VERSION = 1;
+  /**
+   * 模块有api索引
+   */
+  static final int FLAG_INDEXED = 1;
+  /**
+   * 模块包含提前初始化的api
+   */
+  static final int FLAG_EAGER = 1 << 1;
+
+  private static final int MODULE_SIZE = 4 * 4;
+  private static final int API_SIZE = 3 * 4;
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final ByteBuffer buffer;
+  private final int nameOffsets;
+  private final int modules;
+  private final int moduleCount;
+  private final int registers;
+  private final int apis;
+  private final int apiCount;
+  /**
+   * 已经解码的名称
+   */
+  private final String[] names;
+
+  private RegistryFile(ByteBuffer buffer) {
+    this.buffer = buffer;
+    int position = 2 * 4;
+    int nameCount = buffer.getInt(position);
+    this.nameOffsets = position + 4;
+    position = nameOffsets + nameCount * 4;
+    this.moduleCount = buffer.getInt(position);
+    this.modules = position + 4;
+    position = modules + moduleCount * MODULE_SIZE;
+    int registerCount = buffer.getInt(position);
+    this.registers = position + 4;
+    position = registers + registerCount * 4;
+    this.apiCount = buffer.getInt(position);
+    this.apis = position + 4;
+    this.names = new String[nameCount];
+  }
+
+  /**
+   * 映射应用assets中的注册表
+   * @param assets 应用assets
+   * @return 注册表，不存在、被压缩或者格式不匹配时返回null
+   * @throws IOException 读取异常
+   */
+  static RegistryFile open(AssetManager assets) throws IOException {
+    AssetFileDescriptor descriptor;
+    try {
+      descriptor = assets.openFd(REGISTER_FILE);
+    } catch (FileNotFoundException e) {
+      // 被压缩的asset没有独立的文件区域，同样无法打开
+      return null;
+    }
+    // 输入流关闭时同时关闭描述符，映射在关闭后仍然有效
+    try (FileInputStream input = descriptor.createInputStream()) {
+      return wrap(input.getChannel().map(FileChannel.MapMode.READ_ONLY,
+              descriptor.getStartOffset(), descriptor.getLength()));
+    }
+  }
+
+  /**
+   * 映射注册表文件资源
+   * @param url 资源地址
+   * @return 注册表，不是文件资源或者格式不匹配时返回null
+   * @throws IOException 读取异常
+   */
+  static RegistryFile open(URL url) throws IOException {
+    File file = toFile(url);
+    if (null == file) {
+      return null;
+    }
+    try (FileInputStream input = new FileInputStream(file)) {
+      FileChannel channel = input.getChannel();
+      return wrap(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  private static RegistryFile wrap(ByteBuffer buffer) {
+    if (buffer.capacity() < 2 * 4 || MAGIC != buffer.getInt(0) || VERSION != buffer.getInt(4)) {
+      return null;
+    }
+    return new RegistryFile(buffer);
+  }
+
+  private static File toFile(URL url) {
+    if (!"file".equals(url.getProtocol())) {
+      return null;
+    }
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return null;
+    }
+  }
+
+  int getModuleCount() {
+    return moduleCount;
+  }
+
+  String getModuleName(int module) {
+    return getName(buffer.getInt(modules + module * MODULE_SIZE));
+  }
+
+  int getModuleFlags(int module) {
+    return buffer.getInt(modules + module * MODULE_SIZE + 4);
+  }
+
+  /**
+   * 模块的注册类名，列表元素在访问时才解码
+   */
+  List<String> getRegisters(int module) {
+    final int start = buffer.getInt(modules + module * MODULE_SIZE + 8);
+    final int count = buffer.getInt(modules + module * MODULE_SIZE + 12);
+    return new AbstractList<String>() {
+      @Override
+      public String get(int index) {
+        if (index < 0 || index >= count) {
+          throw new IndexOutOfBoundsException(String.valueOf(index));
+        }
+        return getName(buffer.getInt(registers + (start + index) * 4));
+      }
+
+      @Override
+      public int size() {
+        return count;
+      }
+    };
+  }
+
+  /**
+   * 查找api的service所在的模块
+   * @param api api类名
+   * @return 模块序号，没有时返回-1
+   */
+  int findModule(String api) {
+    int hash = api.hashCode();
+    for (int i = findFirst(hash); i >= 0 && i < apiCount && getApiHash(i) == hash; i++) {
+      if (api.equals(getName(buffer.getInt(apis + i * API_SIZE + 4)))) {
+        return buffer.getInt(apis + i * API_SIZE + 8);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * 查找实现了api的所有模块，多实现api可以分布在多个模块中
+   * @param api     api类名
+   * @param modules 模块序号输出
+   */
+  void findModules(String api, List<Integer> modules) {
+    int hash = api.hashCode();
+    for (int i = findFirst(hash); i >= 0 && i < apiCount && getApiHash(i) == hash; i++) {
+      if (api.equals(getName(buffer.getInt(apis + i * API_SIZE + 4)))) {
+        modules.add(buffer.getInt(apis + i * API_SIZE + 8));
+      }
+    }
+  }
+
+  private int getApiHash(int index) {
+    return buffer.getInt(apis + index * API_SIZE);
+  }
+
+  /**
+   * 二分查找hash相同的第一个条目，hash冲突的条目相邻
+   * @return 条目序号，没有时返回-1
+   */
+  private int findFirst(int hash) {
+    int low = 0;
+    int high = apiCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midHash = getApiHash(mid);
+      if (midHash < hash) {
+        low = mid + 1;
+      } else if (midHash > hash) {
+        high = mid - 1;
+      } else {
+        while (mid > 0 && getApiHash(mid - 1) == hash) {
+          mid--;
+        }
+        return mid;
+      }
+    }
+    return -1;
+  }
+
+  private String getName(int index) {
+    String name = names[index];
+    if (null == name) {
+      // 重复解码的结果相同，不需要加锁
+      int offset = buffer.getInt(nameOffsets + index * 4);
+      byte[] bytes = new byte[buffer.getShort(offset) & 0xFFFF];
+      for (int i = 0; i < bytes.length; i++) {
+        bytes[i] = buffer.get(offset + 2 + i);
+      }
+      name = new String(bytes, UTF_8);
+      names[index] = name;
+    }
+    return name;
+  }
+
+}
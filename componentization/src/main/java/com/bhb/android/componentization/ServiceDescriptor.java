@@ -0,0 +1,218 @@
+package com.bhb.android.componentization;
+
+import com.bhb.android.componentization.annotation.Api;
+
+import java.lang.ref.Reference;
+import java.lang.ref.SoftReference;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Service描述，每个service类只有一个，实现了多个单例api的service共享同一个实例；
+ * 同时作为单例构造屏障，同一个service的并发请求在此串行化，不同service之间互不阻塞
+ */
+final class ServiceDescriptor {
+
+  /**
+   * 正在等待进入单例构造的线程及其等待的service，与{@link #creator}组成等待链，用于识别跨线程的循环单例引用
+   */
+  private static final ConcurrentMap<Thread, ServiceDescriptor> sWaiting = new ConcurrentHashMap<>();
+
+  /**
+   * service实现类
+   */
+  final Class<? extends API> service;
+  /**
+   * 编译期生成的工厂，用于非单例创建
+   */
+  volatile ServiceFactory<? extends API> factory;
+  /**
+   * 构造时依赖的api，由编译期收集，用于提前初始化的拓扑排序
+   */
+  volatile List<Class<? extends API>> dependencies = Collections.emptyList();
+  /**
+   * 实现多实现api时的优先级，越大越靠前
+   */
+  volatile int priority;
+  /**
+   * 反射实例化策略，首次使用时解析
+   */
+  private volatile ServiceInstantiator instantiator;
+  /**
+   * 单例实例的持有方式，绑定多个api时以最强的为准，没有绑定时为null
+   */
+  private volatile Api.Retain retain;
+  /**
+   * 已发布的单例实例
+   */
+  private volatile API instance;
+  /**
+   * 软引用持有的单例实例
+   */
+  private volatile Reference<API> softInstance;
+  /**
+   * 正在构造实例的线程，用于识别循环单例引用，等待链检查时在锁外读取
+   */
+  private volatile Thread creator;
+
+  ServiceDescriptor(Class<? extends API> service) {
+    this.service = service;
+  }
+
+  ServiceDescriptor(Class<? extends API> service, API instance) {
+    this.service = service;
+    this.instance = instance;
+    // 手动注册的实例无法重建，不允许释放
+    this.retain = Api.Retain.STRONG;
+  }
+
+  /**
+   * 单例是否已经构造完成并且没有被释放
+   */
+  boolean isCreated() {
+    return null != getInstance();
+  }
+
+  /**
+   * 合并绑定api的持有方式，越靠前越强
+   */
+  synchronized void retain(Api.Retain retain) {
+    if (null == this.retain || retain.ordinal() < this.retain.ordinal()) {
+      this.retain = retain;
+      API instance = getInstance();
+      if (null != instance) {
+        store(instance);
+      }
+    }
+  }
+
+  /**
+   * 释放可回收的单例，下次获取时重建
+   * @return 是否有实例被释放
+   */
+  synchronized boolean release() {
+    if (Api.Retain.RECLAIMABLE != retain || null == instance) {
+      return false;
+    }
+    instance = null;
+    return true;
+  }
+
+  private API getInstance() {
+    API instance = this.instance;
+    if (null != instance) {
+      return instance;
+    }
+    Reference<API> softInstance = this.softInstance;
+    return null != softInstance ? softInstance.get() : null;
+  }
+
+  private void store(API instance) {
+    if (Api.Retain.SOFT == retain) {
+      this.softInstance = new SoftReference<>(instance);
+      this.instance = null;
+    } else {
+      this.instance = instance;
+      this.softInstance = null;
+    }
+  }
+
+  /**
+   * 获取单例，已经构造完成的单例无锁读取
+   * @param api 请求的api，用于异常描述
+   * @return 单例
+   * @throws ComponentException 循环单例引用(包括跨线程互相等待)或者没有合适的实例提供者
+   */
+  API getSingleton(Class<? extends API> api) throws ComponentException {
+    API instance = getInstance();
+    if (null != instance) {
+      return instance;
+    }
+    Thread current = Thread.currentThread();
+    // 先登记等待再检查等待链，两个线程同时形成循环时后登记的一方一定能看到完整的链
+    sWaiting.put(current, this);
+    try {
+      if (isWaitingOn(current)) {
+        throw new ComponentException(
+            "组件[" + api.getCanonicalName() + "]存在循环单例引用，" +
+            "请务必打开延迟初始化模式，这样可以规避由于实例同时请求建立引发的赋值冲突");
+      }
+      return obtainSingleton(api);
+    } finally {
+      sWaiting.remove(current);
+    }
+  }
+
+  /**
+   * 沿等待链检查：本service正在由另一个线程构造，该线程又在等待其它service，最终回到当前线程即为循环；
+   * 同线程重入时构造线程就是当前线程
+   * @param current 当前线程
+   * @return 等待本service是否会形成循环
+   */
+  private boolean isWaitingOn(Thread current) {
+    ServiceDescriptor descriptor = this;
+    // 链长不会超过等待线程数，限制步数避免读取到变化中的链时无法结束
+    for (int i = sWaiting.size(); i >= 0; i--) {
+      Thread owner = descriptor.creator;
+      if (null == owner) {
+        return false;
+      }
+      if (owner == current) {
+        return true;
+      }
+      descriptor = sWaiting.get(owner);
+      if (null == descriptor) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  private synchronized API obtainSingleton(Class<? extends API> api) throws ComponentException {
+    // 已经进入构造屏障，不再是等待状态
+    sWaiting.remove(Thread.currentThread());
+    API instance = getInstance();
+    if (null != instance) {
+      return instance;
+    }
+    creator = Thread.currentThread();
+    try {
+      API serviceInstance = getInstantiator().newInstance(true);
+      if (null == serviceInstance) {
+        throw new ComponentException(
+            "组件[" + api.getCanonicalName() + "]存在循环单例引用，" +
+            "请务必打开延迟初始化模式，这样可以规避由于实例同时请求建立引发的赋值冲突");
+      }
+      store(serviceInstance);
+      return serviceInstance;
+    } finally {
+      creator = null;
+    }
+  }
+
+  /**
+   * 创建新的实例，优先使用编译期生成的工厂
+   * @return 实例
+   * @throws ComponentException 没有合适的实例构造器
+   */
+  API newInstance() throws ComponentException {
+    ServiceFactory<? extends API> factory = this.factory;
+    if (null != factory) {
+      return factory.create();
+    }
+    return getInstantiator().newInstance(false);
+  }
+
+  private ServiceInstantiator getInstantiator() {
+    ServiceInstantiator instantiator = this.instantiator;
+    if (null == instantiator) {
+      // 重复解析的结果等价，不需要加锁
+      instantiator = ServiceInstantiator.resolve(service);
+      this.instantiator = instantiator;
+    }
+    return instantiator;
+  }
+
+}
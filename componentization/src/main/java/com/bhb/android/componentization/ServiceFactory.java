@@ -0,0 +1,22 @@
+package com.bhb.android.componentization;
+
+/**
+ * 编译期生成的Service工厂接口，直接调用构造器创建实例，构造参数中的API依赖一并解析注入
+ *
+ * @param <C> Service类型
+ */
+interface ServiceFactory<C extends API> {
+
+  /**
+   * 生成的工厂类后缀
+   */
+  String SUFFIX = "_Factory";
+
+  /**
+   * 创建实例对象
+   * @return C
+   * @throws ComponentException 依赖组件无法获取
+   */
+  C create() throws ComponentException;
+
+}
@@ -0,0 +1,166 @@
+package com.bhb.android.componentization;
+
+import com.bhb.android.componentization.annotation.Provider;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+
+/**
+ * Service实例化策略，每个Service类只解析一次，缓存解析出的成员，后续创建实例时不再扫描成员
+ * 优先级：kotlin object的INSTANCE > @Provider属性 > @Provider方法 > 无参构造器
+ */
+final class ServiceInstantiator {
+
+  private final Class<? extends API> service;
+  /**
+   * kotlin object单例引用
+   */
+  private final Field instanceField;
+  /**
+   * 被@Provider标记的属性
+   */
+  private final Field providerField;
+  /**
+   * 被@Provider标记的方法
+   */
+  private final Method providerMethod;
+  /**
+   * 无参构造器
+   */
+  private final Constructor<? extends API> constructor;
+  /**
+   * 解析@Provider时发现的声明错误，延迟到获取单例时抛出
+   */
+  private final ComponentException providerError;
+
+  private ServiceInstantiator(Class<? extends API> service) {
+    this.service = service;
+    this.instanceField = findInstanceField(service);
+    Field providerField = null;
+    Method providerMethod = null;
+    ComponentException providerError = null;
+    try {
+      providerField = findProviderField(service);
+      if (null == providerField) {
+        providerMethod = findProviderMethod(service);
+      }
+    } catch (ComponentException e) {
+      providerError = e;
+    }
+    this.providerField = providerField;
+    this.providerMethod = providerMethod;
+    this.providerError = providerError;
+    this.constructor = findConstructor(service);
+  }
+
+  /**
+   * 解析Service实例化策略
+   * @param service service实现
+   * @return 实例化策略
+   */
+  static ServiceInstantiator resolve(Class<? extends API> service) {
+    return new ServiceInstantiator(service);
+  }
+
+  /**
+   * 创建实例
+   * @param singleton 是否单例模式，单例模式使用@Provider提供的引用，否则使用构造器
+   * @return 实例
+   * @throws ComponentException 没有合适的实例提供者
+   */
+  API newInstance(boolean singleton) throws ComponentException {
+    if (null != instanceField) {
+      try {
+        return (API) instanceField.get(null);
+      } catch (IllegalAccessException e) {
+        e.printStackTrace();
+      }
+    }
+    if (!singleton) {
+      if (null != constructor) {
+        try {
+          return constructor.newInstance();
+        } catch (Exception e) {
+          e.printStackTrace();
+        }
+      }
+      throw new ComponentException("对于Service类" + service.getName() + "而言，没有找到合适的实例构造器");
+    }
+    if (null != providerError) {
+      throw providerError;
+    }
+    try {
+      if (null != providerField) {
+        return (API) providerField.get(null);
+      }
+      if (null != providerMethod) {
+        return (API) providerMethod.invoke(null);
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+    }
+    throw new ComponentException(
+            "对于Service类" + service.getName() + "而言，没有找到合适的实例提供者");
+  }
+
+  private static Field findInstanceField(Class<? extends API> service) {
+    for (Field field : service.getDeclaredFields()) {
+      if ("INSTANCE".equals(field.getName()) && Modifier.isStatic(field.getModifiers())
+              && service.isAssignableFrom(field.getType())) {
+        field.setAccessible(true);
+        return field;
+      }
+    }
+    return null;
+  }
+
+  private static Field findProviderField(Class<? extends API> service)
+          throws ComponentException {
+    for (Field field : service.getDeclaredFields()) {
+      if (null == field.getAnnotation(Provider.class)) {
+        continue;
+      }
+      if (!service.isAssignableFrom(field.getType())) {
+        throw new ComponentException("对于Service类" + service.getName()
+                + "而言，被@Provider标记为服务提供者属性\"" + field.getName() + "\"类型不兼容");
+      }
+      field.setAccessible(true);
+      return field;
+    }
+    return null;
+  }
+
+  private static Method findProviderMethod(Class<? extends API> service)
+          throws ComponentException {
+    for (Method method : service.getMethods()) {
+      if (null == method.getAnnotation(Provider.class)) {
+        continue;
+      }
+      if (method.getParameterTypes().length > 0) {
+        throw new ComponentException("对于Service类" + service.getName()
+                + "而言，被@Provider标记为服务提供者方法\"" + method.getName() + "\"不能有参数");
+      }
+      if (!service.isAssignableFrom(method.getReturnType())) {
+        throw new ComponentException("对于Service类" + service.getName()
+                + "而言，被@Provider标记为服务提供者方法\"" + method.getName() + "\"返回类型不兼容");
+      }
+      method.setAccessible(true);
+      return method;
+    }
+    return null;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Constructor<? extends API> findConstructor(Class<? extends API> service) {
+    for (Constructor<?> constructor : service.getDeclaredConstructors()) {
+      if (constructor.getParameterTypes().length == 0) {
+        constructor.setAccessible(true);
+        return (Constructor<? extends API>) constructor;
+      }
+    }
+    return null;
+  }
+
+}
@@ -3,7 +3,9 @@ package com.bhb.android.componentization;
 import com.bhb.android.componentization.compiler.ComponentizationProcessor;
 import com.google.testing.compile.JavaFileObjects;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import javax.tools.JavaFileObject;
 
@@ -12,6 +14,9 @@ import static com.google.testing.compile.JavaSourceSubjectFactory.javaSource;
 
 public class AutoWiredTest {
 
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
   @Test
   public void autoWired() {
     JavaFileObject source = JavaFileObjects.forSourceString("test.Test", ""
@@ -57,4 +62,46 @@ public class AutoWiredTest {
             .generatesSources(bindingSource);
   }
 
+  @Test
+  public void inlineLazyKeepsNonStrongFieldsInInjector() {
+    JavaFileObject source = JavaFileObjects.forSourceString("test.Host", ""
+            + "package test;\n"
+            + "import com.bhb.android.componentization.API;\n"
+            + "import com.bhb.android.componentization.annotation.Api;\n"
+            + "import com.bhb.android.componentization.annotation.AutoWired;\n"
+            + "public class Host {\n"
+            + "  @Api(singleton = true, retain = Api.Retain.SOFT)\n"
+            + "  interface SoftAPI extends API {}\n"
+            + "  @Api(singleton = true)\n"
+            + "  interface StrongAPI extends API {}\n"
+            + "  @AutoWired(lazy = true) SoftAPI soft;\n"
+            + "  @AutoWired(lazy = true) StrongAPI strong;\n"
+            + "}"
+    );
+
+    // 强引用api的延迟字段由插件改写为读取时解析，软引用api的延迟字段仍然由注入类注入
+    JavaFileObject injectorSource = JavaFileObjects.forSourceString("test/Host_Injector", ""
+            + "package test;\n"
+            + "import com.bhb.android.componentization.Componentization;\n"
+            + "public final class Host_Injector {\n"
+            + "  private Host_Injector() {\n"
+            + "  }\n"
+            + "  public static void inject(Host target) {\n"
+            + "    target.soft = Componentization.getLazySafely(Host.SoftAPI.class);\n"
+            + "  }\n"
+            + "}"
+    );
+
+    assertAbout(javaSource()).that(source)
+            .withCompilerOptions("-Xlint:-processing",
+                    "-Aoption.inline.lazy=true",
+                    "-Aoption.module.name=test",
+                    "-Aoption.root.module.dir=" + folder.getRoot().getAbsolutePath(),
+                    "-Aoption.resources.dir=build")
+            .processedWith(new ComponentizationProcessor())
+            .compilesWithoutError()
+            .and()
+            .generatesSources(injectorSource);
+  }
+
 }
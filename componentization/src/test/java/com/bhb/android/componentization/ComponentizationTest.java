@@ -0,0 +1,518 @@
+package com.bhb.android.componentization;
+
+import com.bhb.android.componentization.annotation.Api;
+import com.bhb.android.componentization.annotation.Provider;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ComponentizationTest {
+
+  @Api(singleton = true)
+  public interface SingletonAPI extends API {
+  }
+
+  public static class SingletonService implements SingletonAPI {
+
+    static final AtomicInteger created = new AtomicInteger();
+
+    @Provider
+    public static SingletonService provide() {
+      created.incrementAndGet();
+      try {
+        Thread.sleep(20);
+      } catch (InterruptedException ignored) {
+      }
+      return new SingletonService();
+    }
+  }
+
+  @Api(singleton = true)
+  public interface CrossCycleAAPI extends API {
+  }
+
+  @Api(singleton = true)
+  public interface CrossCycleBAPI extends API {
+  }
+
+  /**
+   * 两个单例在不同线程中同时进入构造后互相请求对方
+   */
+  static final CountDownLatch crossCycleEntered = new CountDownLatch(2);
+  static final AtomicInteger crossCycleMissed = new AtomicInteger();
+
+  public static class CrossCycleAService implements CrossCycleAAPI {
+
+    @Provider
+    public static CrossCycleAService provide() throws InterruptedException {
+      crossCycleEntered.countDown();
+      crossCycleEntered.await();
+      if (null == Componentization.getSafely(CrossCycleBAPI.class)) {
+        crossCycleMissed.incrementAndGet();
+      }
+      return new CrossCycleAService();
+    }
+  }
+
+  public static class CrossCycleBService implements CrossCycleBAPI {
+
+    @Provider
+    public static CrossCycleBService provide() throws InterruptedException {
+      crossCycleEntered.countDown();
+      crossCycleEntered.await();
+      if (null == Componentization.getSafely(CrossCycleAAPI.class)) {
+        crossCycleMissed.incrementAndGet();
+      }
+      return new CrossCycleBService();
+    }
+  }
+
+  @Api(singleton = true)
+  public interface AliasAAPI extends API {
+  }
+
+  @Api(singleton = true)
+  public interface AliasBAPI extends API {
+  }
+
+  public interface FrozenLateAPI extends API {
+  }
+
+  public static class AliasService implements AliasAAPI, AliasBAPI {
+
+    static final AtomicInteger created = new AtomicInteger();
+
+    @Provider
+    public static AliasService provide() {
+      created.incrementAndGet();
+      return new AliasService();
+    }
+  }
+
+  @Api(singleton = true)
+  public interface SharedLazyAPI extends API {
+  }
+
+  public static class SharedLazyService implements SharedLazyAPI {
+
+    @Provider
+    public static SharedLazyService provide() {
+      return new SharedLazyService();
+    }
+  }
+
+  @Api(singleton = true, eager = true)
+  public interface EagerAAPI extends API {
+  }
+
+  @Api(singleton = true)
+  public interface EagerBAPI extends API {
+  }
+
+  static final List<String> eagerOrder = Collections.synchronizedList(new ArrayList<>());
+
+  public static class EagerAService implements EagerAAPI {
+
+    @Provider
+    public static EagerAService provide() {
+      eagerOrder.add("A");
+      return new EagerAService();
+    }
+  }
+
+  public static class EagerBService implements EagerBAPI {
+
+    @Provider
+    public static EagerBService provide() {
+      eagerOrder.add("B");
+      return new EagerBService();
+    }
+  }
+
+  @Api(scope = "activity")
+  public interface ActivityScopedAPI extends API {
+  }
+
+  public static class ActivityScopedService implements ActivityScopedAPI {
+  }
+
+  @Api(singleton = true, retain = Api.Retain.RECLAIMABLE)
+  public interface ReclaimableAPI extends API {
+  }
+
+  public static class ReclaimableService implements ReclaimableAPI {
+
+    @Provider
+    public static ReclaimableService provide() {
+      return new ReclaimableService();
+    }
+  }
+
+  @Api(pool = 1)
+  public interface PooledAPI extends API {
+  }
+
+  public static class PooledService implements PooledAPI, Recyclable {
+
+    boolean recycled;
+
+    @Override
+    public void onRecycle() {
+      recycled = true;
+    }
+  }
+
+  @Api(singleton = true)
+  public interface AsyncAPI extends API {
+  }
+
+  public static class AsyncService implements AsyncAPI {
+
+    static final AtomicInteger created = new AtomicInteger();
+
+    @Provider
+    public static AsyncService provide() {
+      created.incrementAndGet();
+      return new AsyncService();
+    }
+  }
+
+  @Api(singleton = true, multiple = true)
+  public interface InterceptorAPI extends API {
+  }
+
+  public static class FirstInterceptor implements InterceptorAPI {
+
+    @Provider
+    public static FirstInterceptor provide() {
+      return new FirstInterceptor();
+    }
+  }
+
+  public static class SecondInterceptor implements InterceptorAPI {
+
+    @Provider
+    public static SecondInterceptor provide() {
+      return new SecondInterceptor();
+    }
+  }
+
+  @Api(singleton = true, multiple = true)
+  public interface ListenerAPI extends API {
+
+    void onEvent(List<String> events);
+
+    String getName();
+  }
+
+  public static class FirstListener implements ListenerAPI {
+
+    @Provider
+    public static FirstListener provide() {
+      return new FirstListener();
+    }
+
+    @Override
+    public void onEvent(List<String> events) {
+      events.add("first");
+    }
+
+    @Override
+    public String getName() {
+      return "first";
+    }
+  }
+
+  public static class SecondListener implements ListenerAPI {
+
+    @Provider
+    public static SecondListener provide() {
+      return new SecondListener();
+    }
+
+    @Override
+    public void onEvent(List<String> events) {
+      events.add("second");
+    }
+
+    @Override
+    public String getName() {
+      return "second";
+    }
+  }
+
+  @Test
+  public void singletonConstructedOnce() throws Exception {
+    Componentization.register(SingletonAPI.class, SingletonService.class);
+    int threads = 16;
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    CountDownLatch start = new CountDownLatch(1);
+    Set<API> instances = ConcurrentHashMap.newKeySet();
+    for (int i = 0; i < threads; i++) {
+      executor.execute(() -> {
+        try {
+          start.await();
+          instances.add(Componentization.get(SingletonAPI.class));
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      });
+    }
+    start.countDown();
+    executor.shutdown();
+    assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(1, SingletonService.created.get());
+    assertEquals(1, instances.size());
+  }
+
+  @Test
+  public void crossThreadSingletonCycleDetected() throws Exception {
+    Componentization.register(CrossCycleAAPI.class, CrossCycleAService.class);
+    Componentization.register(CrossCycleBAPI.class, CrossCycleBService.class);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<API> a = executor.submit(() -> Componentization.get(CrossCycleAAPI.class));
+      Future<API> b = executor.submit(() -> Componentization.get(CrossCycleBAPI.class));
+      // 没有跨线程检测时两个线程各自持有构造锁并等待对方，永远不会结束
+      assertNotNull(a.get(5, TimeUnit.SECONDS));
+      assertNotNull(b.get(5, TimeUnit.SECONDS));
+      assertTrue(crossCycleMissed.get() >= 1);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void singletonSharedByApis() throws Exception {
+    Componentization.register(AliasAAPI.class, AliasService.class);
+    Componentization.register(AliasBAPI.class, AliasService.class);
+    API a = Componentization.get(AliasAAPI.class);
+    API b = Componentization.get(AliasBAPI.class);
+    assertSame(a, b);
+    assertEquals(1, AliasService.created.get());
+  }
+
+  @Test
+  public void lazyFailureMemoized() {
+    AtomicInteger attempts = new AtomicInteger();
+    LazyDelegate<SingletonAPI> delegate = new LazyDelegateImpl<SingletonAPI>(SingletonAPI.class) {
+      @Override
+      public SingletonAPI create() {
+        attempts.incrementAndGet();
+        return null;
+      }
+    };
+    try {
+      Componentization.setLazyRetryInterval(LazyDelegateImpl.RETRY_NEVER);
+      assertNull(delegate.get());
+      assertNull(delegate.get());
+      assertEquals(1, attempts.get());
+      Componentization.setLazyRetryInterval(LazyDelegateImpl.RETRY_ALWAYS);
+      assertNull(delegate.get());
+      assertEquals(2, attempts.get());
+    } finally {
+      Componentization.setLazyRetryInterval(LazyDelegateImpl.DEFAULT_RETRY_INTERVAL);
+    }
+  }
+
+  @Test
+  public void lazyFallsBackWithoutLazyClass() throws Exception {
+    Componentization.register(AliasAAPI.class, AliasService.class);
+    API direct = Componentization.get(AliasAAPI.class);
+    assertSame(direct, Componentization.getLazySafely(AliasAAPI.class));
+    assertSame(direct, Componentization.getLazySafely(AliasAAPI.class));
+  }
+
+  @Test
+  public void lazySingletonShared() throws Exception {
+    Componentization.register(SharedLazyAPI.class, SharedLazyService.class);
+    API lazy = Componentization.getLazy(SharedLazyAPI.class);
+    assertTrue(lazy instanceof SharedLazyService_Lazy);
+    assertSame(lazy, Componentization.getLazy(SharedLazyAPI.class));
+    assertSame(lazy, Componentization.getLazySafely(SharedLazyAPI.class));
+  }
+
+  @Test
+  public void eagerInitializedInDependencyOrder() throws Exception {
+    ApiDescriptor a = new ApiDescriptor(EagerAAPI.class);
+    ApiDescriptor b = new ApiDescriptor(EagerBAPI.class);
+    ServiceDescriptor aService = new ServiceDescriptor(EagerAService.class);
+    ServiceDescriptor bService = new ServiceDescriptor(EagerBService.class);
+    aService.dependencies = Collections.<Class<? extends API>>singletonList(EagerBAPI.class);
+    a.bind(aService);
+    b.bind(bService);
+    Map<Class<? extends API>, ApiDescriptor> descriptors = new HashMap<>();
+    descriptors.put(EagerAAPI.class, a);
+    descriptors.put(EagerBAPI.class, b);
+    EagerInitializer.start(descriptors);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (!aService.isCreated() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(5);
+    }
+    assertTrue(aService.isCreated());
+    assertTrue(bService.isCreated());
+    assertEquals(Arrays.asList("B", "A"), eagerOrder);
+  }
+
+  @Test
+  public void scopedInstancesOwnedByMatchingScope() throws Exception {
+    Componentization.register(ActivityScopedAPI.class, ActivityScopedService.class);
+    ComponentScope application = ComponentScope.create("application");
+    ComponentScope activity = application.newChild("activity");
+    ComponentScope screen = activity.newChild("screen");
+    API scoped = screen.get(ActivityScopedAPI.class);
+    assertSame(scoped, activity.get(ActivityScopedAPI.class));
+    ComponentScope otherActivity = application.newChild("activity");
+    assertNotSame(scoped, otherActivity.get(ActivityScopedAPI.class));
+    activity.close();
+    assertTrue(screen.isClosed());
+    assertNull(screen.getSafely(ActivityScopedAPI.class));
+    assertNotNull(otherActivity.get(ActivityScopedAPI.class));
+  }
+
+  @Test
+  public void scopedApiRejectedOutsideScope() throws Exception {
+    Componentization.register(ActivityScopedAPI.class, ActivityScopedService.class);
+    try {
+      Componentization.get(ActivityScopedAPI.class);
+      fail("作用域api不能通过Componentization获取");
+    } catch (ComponentException expected) {
+      // 作用域api只能通过ComponentScope获取
+    }
+    assertNull(Componentization.getSafely(ActivityScopedAPI.class));
+    assertNull(Componentization.getLazySafely(ActivityScopedAPI.class));
+  }
+
+  @Test
+  public void reclaimableSingletonRebuiltAfterTrim() throws Exception {
+    Componentization.register(ReclaimableAPI.class, ReclaimableService.class);
+    LazyDelegate<ReclaimableAPI> delegate = new LazyDelegateImpl<>(ReclaimableAPI.class);
+    API first = Componentization.get(ReclaimableAPI.class);
+    assertSame(first, Componentization.get(ReclaimableAPI.class));
+    assertSame(first, delegate.get());
+    assertTrue(Componentization.trimMemory() >= 1);
+    API second = Componentization.get(ReclaimableAPI.class);
+    assertNotSame(first, second);
+    assertSame(second, delegate.get());
+  }
+
+  @Test
+  public void pooledInstanceReusedAfterRecycle() throws Exception {
+    Componentization.register(PooledAPI.class, PooledService.class);
+    PooledAPI first = Componentization.get(PooledAPI.class);
+    PooledAPI second = Componentization.get(PooledAPI.class);
+    assertNotSame(first, second);
+    assertTrue(Componentization.recycle(PooledAPI.class, first));
+    assertTrue(((PooledService) first).recycled);
+    assertFalse(Componentization.recycle(PooledAPI.class, second));
+    assertSame(first, Componentization.get(PooledAPI.class));
+    PoolStats stats = Componentization.getPoolStats(PooledAPI.class);
+    assertEquals(1, stats.getHits());
+    assertEquals(2, stats.getMisses());
+    assertEquals(0, stats.getSize());
+  }
+
+  @Test
+  public void multipleServicesOrderedByPriority() throws Exception {
+    Componentization.register(InterceptorAPI.class, FirstInterceptor.class);
+    Componentization.register(InterceptorAPI.class, SecondInterceptor.class);
+    InterceptorAPI[] all = Componentization.getAll(InterceptorAPI.class);
+    assertEquals(2, all.length);
+    assertTrue(all[0] instanceof FirstInterceptor);
+    assertTrue(all[1] instanceof SecondInterceptor);
+    assertSame(all, Componentization.getAll(InterceptorAPI.class));
+    ApiDescriptor descriptor = new ApiDescriptor(InterceptorAPI.class);
+    ServiceDescriptor low = new ServiceDescriptor(FirstInterceptor.class);
+    ServiceDescriptor high = new ServiceDescriptor(SecondInterceptor.class);
+    high.priority = 10;
+    descriptor.bind(low);
+    descriptor.bind(high);
+    assertSame(high, descriptor.service);
+    assertArrayEquals(new ServiceDescriptor[]{high, low}, descriptor.services);
+  }
+
+  @Test
+  public void asyncSingletonConstructionShared() throws Exception {
+    Componentization.register(AsyncAPI.class, AsyncService.class);
+    List<Runnable> tasks = new ArrayList<>();
+    Future<AsyncAPI> first = Componentization.getAsync(AsyncAPI.class, tasks::add);
+    Future<AsyncAPI> second = Componentization.getAsync(AsyncAPI.class, tasks::add);
+    assertSame(first, second);
+    assertEquals(1, tasks.size());
+    assertFalse(first.isDone());
+    tasks.get(0).run();
+    assertSame(Componentization.get(AsyncAPI.class), first.get());
+    assertEquals(1, AsyncService.created.get());
+    Future<AsyncAPI> created = Componentization.getAsync(AsyncAPI.class, tasks::add);
+    assertTrue(created.isDone());
+    assertEquals(1, tasks.size());
+    assertSame(first.get(), created.get());
+  }
+
+  @Test
+  public void broadcastDispatchesInPriorityOrder() throws Exception {
+    Componentization.register(ListenerAPI.class, FirstListener.class);
+    Componentization.register(ListenerAPI.class, SecondListener.class);
+    ListenerAPI broadcast = Componentization.broadcast(ListenerAPI.class);
+    assertTrue(broadcast instanceof ComponentizationTest_ListenerAPI_Broadcast);
+    assertSame(broadcast, Componentization.broadcast(ListenerAPI.class));
+    List<String> events = new ArrayList<>();
+    broadcast.onEvent(events);
+    assertEquals(Arrays.asList("first", "second"), events);
+    assertEquals("first", broadcast.getName());
+    List<Runnable> tasks = new ArrayList<>();
+    Componentization.broadcast(ListenerAPI.class, tasks::add).onEvent(events);
+    assertEquals(2, tasks.size());
+    assertEquals(2, events.size());
+    for (Runnable task : tasks) {
+      task.run();
+    }
+    assertEquals(4, events.size());
+  }
+
+  @Test
+  public void frozenRegistryLookup() throws Exception {
+    Componentization.register(AliasAAPI.class, AliasService.class);
+    Componentization.register(AliasBAPI.class, AliasService.class);
+    Componentization.freeze();
+    assertSame(Componentization.get(AliasAAPI.class), Componentization.get(AliasBAPI.class));
+    // 冻结之后新增的api在下一次冻结时并入冻结表，重建不替换已有的描述
+    ApiDescriptor alias = Componentization.getDescriptor(AliasAAPI.class);
+    ApiDescriptor late = Componentization.getDescriptor(FrozenLateAPI.class);
+    Componentization.freeze();
+    assertSame(alias, Componentization.getDescriptor(AliasAAPI.class));
+    assertSame(late, Componentization.getDescriptor(FrozenLateAPI.class));
+    FrozenRegistry frozen = FrozenRegistry.build(Arrays.asList(
+            new ApiDescriptor(AliasAAPI.class), new ApiDescriptor(AliasBAPI.class)));
+    assertNotNull(frozen);
+    assertSame(AliasAAPI.class, frozen.get(AliasAAPI.class).api);
+    assertSame(AliasBAPI.class, frozen.get(AliasBAPI.class).api);
+    assertNull(frozen.get(SingletonAPI.class));
+    assertEquals(2, frozen.getDescriptors().size());
+  }
+
+}
@@ -0,0 +1,55 @@
+package com.bhb.android.componentization;
+
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * 模拟编译期生成的广播分发类，与api同包，嵌套接口以下划线连接外部类名
+ */
+final class ComponentizationTest_ListenerAPI_Broadcast
+        implements ComponentizationTest.ListenerAPI,
+        BroadcastDispatcher<ComponentizationTest.ListenerAPI> {
+
+  private final ComponentizationTest.ListenerAPI[] targets;
+  private final Executor executor;
+
+  ComponentizationTest_ListenerAPI_Broadcast(ComponentizationTest.ListenerAPI[] targets,
+                                             Executor executor) {
+    this.targets = targets;
+    this.executor = executor;
+  }
+
+  @Override
+  public ComponentizationTest.ListenerAPI dispatchOn(Executor executor) {
+    return new ComponentizationTest_ListenerAPI_Broadcast(targets, executor);
+  }
+
+  @Override
+  public void onEvent(List<String> events) {
+    final ComponentizationTest.ListenerAPI[] $targets = this.targets;
+    final Executor $executor = this.executor;
+    if (null == $executor) {
+      for (int $i = 0; $i < $targets.length; $i++) {
+        $targets[$i].onEvent(events);
+      }
+    } else {
+      for (int $i = 0; $i < $targets.length; $i++) {
+        final ComponentizationTest.ListenerAPI $target = $targets[$i];
+        $executor.execute(() -> $target.onEvent(events));
+      }
+    }
+  }
+
+  @Override
+  public String getName() {
+    final ComponentizationTest.ListenerAPI[] $targets = this.targets;
+    if (0 == $targets.length) {
+      return null;
+    }
+    String $result = $targets[0].getName();
+    for (int $i = 1; $i < $targets.length; $i++) {
+      $targets[$i].getName();
+    }
+    return $result;
+  }
+}
@@ -0,0 +1,217 @@
+package com.bhb.android.componentization;
+
+import com.bhb.android.componentization.annotation.Api;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ModuleIndexTest {
+
+  /**
+   * 插件生成的二进制注册表及其来源属性文件所在的资源目录
+   */
+  private static final String REGISTRY_DIR = "/registry/";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Api
+  public interface LazyModuleAPI extends API {
+  }
+
+  public static class LazyModuleService implements LazyModuleAPI {
+  }
+
+  public static class LazyModuleRegister implements ComponentRegister {
+
+    static final AtomicInteger registered = new AtomicInteger();
+
+    @Override
+    public Item register() {
+      registered.incrementAndGet();
+      return new Item(Collections.<Class<? extends API>>singletonList(LazyModuleAPI.class),
+              LazyModuleService.class);
+    }
+  }
+
+  @Api
+  public interface BootModuleAPI extends API {
+  }
+
+  public static class BootModuleService implements BootModuleAPI {
+  }
+
+  public static class BootModuleRegister implements ComponentRegister {
+
+    static final AtomicInteger registered = new AtomicInteger();
+
+    @Override
+    public Item register() {
+      registered.incrementAndGet();
+      return new Item(Collections.<Class<? extends API>>singletonList(BootModuleAPI.class),
+              BootModuleService.class);
+    }
+  }
+
+  @Test
+  public void indexedModuleLoadedOnFirstRequest() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("lazy", LazyModuleRegister.class.getName());
+    properties.setProperty("lazy" + ModuleIndex.APIS_SUFFIX, LazyModuleAPI.class.getName());
+    // 没有api索引的模块(旧版本注解处理器生成)在附加时直接载入
+    properties.setProperty("boot", BootModuleRegister.class.getName());
+    Componentization.attachClassLoader(newClassLoader(writeProperties(properties), null));
+    assertEquals(1, BootModuleRegister.registered.get());
+    assertEquals(0, LazyModuleRegister.registered.get());
+    assertTrue(Componentization.get(LazyModuleAPI.class) instanceof LazyModuleService);
+    Componentization.get(LazyModuleAPI.class);
+    assertEquals(1, LazyModuleRegister.registered.get());
+  }
+
+  @Test
+  public void propertiesIndexedPerModule() throws Exception {
+    Properties properties = new Properties();
+    properties.setProperty("app", "a.AppRegister,\nb.AppRegister");
+    properties.setProperty("app" + ModuleIndex.APIS_SUFFIX, "x.SharedAPI,x.AppAPI");
+    properties.setProperty("app" + ModuleIndex.EAGER_SUFFIX, "true");
+    properties.setProperty("lib", "c.LibRegister");
+    properties.setProperty("lib" + ModuleIndex.APIS_SUFFIX, "x.SharedAPI");
+    properties.setProperty("old", "d.OldRegister");
+    ModuleIndex index = ModuleIndex.load(newClassLoader(writeProperties(properties), null),
+            null, new HashSet<String>());
+    Map<String, ModuleIndex.Module> modules = byName(index);
+    assertEquals(3, modules.size());
+    ModuleIndex.Module app = modules.get("app");
+    assertEquals(Arrays.asList("a.AppRegister", "b.AppRegister"), app.registers);
+    assertTrue(app.indexed);
+    assertTrue(app.isBootstrap());
+    assertFalse(modules.get("lib").isBootstrap());
+    assertTrue(modules.get("old").isBootstrap());
+    assertSame(app, index.find("x.AppAPI"));
+    assertEquals(2, index.findAll("x.SharedAPI").size());
+    assertNull(index.find("x.MissingAPI"));
+    assertTrue(index.findAll("x.MissingAPI").isEmpty());
+  }
+
+  @Test
+  public void readResourcesSkippedByChildClassLoader() throws Exception {
+    Properties hostProperties = new Properties();
+    hostProperties.setProperty("host", "a.HostRegister");
+    Properties pluginProperties = new Properties();
+    pluginProperties.setProperty("plugin", "b.PluginRegister");
+    Set<String> resources = new HashSet<>();
+    URLClassLoader host = newClassLoader(writeProperties(hostProperties), null);
+    assertEquals(Collections.singleton("host"),
+            byName(ModuleIndex.load(host, null, resources)).keySet());
+    // 父ClassLoader中的注册文件同样会出现在插件ClassLoader中
+    URLClassLoader plugin = newClassLoader(writeProperties(pluginProperties), host);
+    assertEquals(Collections.singleton("plugin"),
+            byName(ModuleIndex.load(plugin, null, resources)).keySet());
+    assertTrue(ModuleIndex.load(plugin, null, resources).getModules().isEmpty());
+  }
+
+  @Test
+  public void pluginRegistryFileReadable() throws Exception {
+    RegistryFile registryFile = RegistryFile.open(getRegistryResource(RegistryFile.REGISTER_FILE));
+    assertEquals(3, registryFile.getModuleCount());
+    assertEquals("app", registryFile.getModuleName(0));
+    assertEquals(RegistryFile.FLAG_INDEXED | RegistryFile.FLAG_EAGER,
+            registryFile.getModuleFlags(0));
+    assertEquals(Arrays.asList("a.AppRegister", "b.AppRegister"), registryFile.getRegisters(0));
+    assertEquals("lib", registryFile.getModuleName(1));
+    assertEquals(RegistryFile.FLAG_INDEXED, registryFile.getModuleFlags(1));
+    assertEquals(Collections.singletonList("c.LibRegister"), registryFile.getRegisters(1));
+    assertEquals(0, registryFile.getModuleFlags(2));
+    assertEquals(0, registryFile.findModule("Aa"));
+    assertEquals(1, registryFile.findModule("BB"));
+    assertEquals(-1, registryFile.findModule("C#"));
+    List<Integer> modules = new ArrayList<>();
+    registryFile.findModules("x.SharedAPI", modules);
+    Collections.sort(modules);
+    assertEquals(Arrays.asList(0, 1), modules);
+  }
+
+  @Test
+  public void binaryRegistryPreferredOverProperties() throws Exception {
+    File dir = folder.newFolder();
+    try (InputStream input = getRegistryResource(RegistryFile.REGISTER_FILE).openStream()) {
+      Files.copy(input, new File(dir, RegistryFile.REGISTER_FILE).toPath());
+    }
+    Properties properties = new Properties();
+    try (InputStream input = getRegistryResource(ModuleIndex.REGISTER_FILE).openStream()) {
+      properties.load(input);
+    }
+    // 同一位置的属性文件不再读取，其中多出的模块不会出现
+    properties.setProperty("stale", "d.StaleRegister");
+    writeProperties(dir, properties);
+    ModuleIndex index = ModuleIndex.load(newClassLoader(dir, null), null, new HashSet<String>());
+    Map<String, ModuleIndex.Module> modules = byName(index);
+    assertEquals(new HashSet<>(Arrays.asList("app", "lib", "old")), modules.keySet());
+    assertSame(modules.get("app"), index.find("Aa"));
+    assertEquals(2, index.findAll("x.SharedAPI").size());
+    assertNull(index.find("x.MissingAPI"));
+  }
+
+  /**
+   * 测试资源中插件生成的注册表，放在子目录中避免被启动载入
+   */
+  private static URL getRegistryResource(String name) {
+    return ModuleIndexTest.class.getResource(REGISTRY_DIR + name);
+  }
+
+  private static Map<String, ModuleIndex.Module> byName(ModuleIndex index) {
+    Map<String, ModuleIndex.Module> modules = new LinkedHashMap<>();
+    for (ModuleIndex.Module module : index.getModules()) {
+      modules.put(module.name, module);
+    }
+    return modules;
+  }
+
+  private File writeProperties(Properties properties) throws IOException {
+    return writeProperties(folder.newFolder(), properties);
+  }
+
+  private static File writeProperties(File dir, Properties properties) throws IOException {
+    try (OutputStream output = new FileOutputStream(new File(dir, ModuleIndex.REGISTER_FILE))) {
+      properties.store(output, "module registers");
+    }
+    return dir;
+  }
+
+  /**
+   * 只包含指定目录的ClassLoader，注册类仍然从测试ClassLoader中载入
+   */
+  private static URLClassLoader newClassLoader(File dir, ClassLoader parent)
+          throws MalformedURLException {
+    return new URLClassLoader(new URL[]{dir.toURI().toURL()},
+            null != parent ? parent : ModuleIndexTest.class.getClassLoader());
+  }
+
+}
@@ -0,0 +1,7 @@
+package com.bhb.android.componentization;
+
+/**
+ * 模拟编译期生成的延迟代理类，api没有方法，不需要转发
+ */
+class SharedLazyService_Lazy implements ComponentizationTest.SharedLazyAPI {
+}
@@ -5,12 +5,21 @@ import javassist.ClassPath
 import javassist.ClassPool
 import javassist.CtClass
 import javassist.CtField
+import javassist.CtNewConstructor
+import javassist.CtNewMethod
 import javassist.bytecode.AccessFlag
 import javassist.bytecode.AnnotationDefaultAttribute
 import javassist.bytecode.AnnotationsAttribute
+import javassist.bytecode.CodeAttribute
+import javassist.bytecode.ConstPool
+import javassist.bytecode.MethodInfo
+import javassist.bytecode.Opcode
 import javassist.bytecode.annotation.ArrayMemberValue
 import javassist.bytecode.annotation.BooleanMemberValue
+import javassist.bytecode.annotation.EnumMemberValue
 import javassist.bytecode.annotation.StringMemberValue
+import javassist.expr.ExprEditor
+import javassist.expr.FieldAccess
 import org.gradle.api.Project
 import java.io.File
 import java.io.IOException
@@ -28,6 +37,12 @@ class ComponentScanner(private val project: Project): Transform() {
   companion object {
     private const val PACKAGE = "com.bhb.android.componentization"
     private const val COMPONENTIZATION = "${PACKAGE}.Componentization"
+    private const val API = "${PACKAGE}.API"
+    private const val COMPONENT_INDEX = "${PACKAGE}.ComponentIndex"
+    private const val COMPONENT_INDEX_IMPL = "${COMPONENT_INDEX}_Impl"
+    private const val REGISTER_FILE_NAME = "module-register.properties"
+    private const val ACCESSOR_SUFFIX = "_Accessor"
+    private const val INJECTOR_SUFFIX = "_Injector"
     private const val REGISTER_ITEM = "${PACKAGE}.ComponentRegister\$Item"
     private const val ANNOTATION_API = "${PACKAGE}.Api"
     private const val ANNOTATION_SERVICE = "${PACKAGE}.Service"
@@ -45,6 +60,10 @@ class ComponentScanner(private val project: Project): Transform() {
             "android/", "androidx/",
             "kotlin/", "kotlinx/",
             "org/intellij/", "org/jetbrains/")
+    /**
+     * 可以改写为api直接访问类调用的Componentization方法
+     */
+    private val ACCESSOR_METHODS = arrayOf("get", "getSafely", "getLazy", "getLazySafely")
 
     init {
       ClassPool.cacheOpenedJarFile = false
@@ -197,19 +216,15 @@ class ComponentScanner(private val project: Project): Transform() {
     classPaths.add(classPool.appendClassPath(androidJar))
     val effectInputs = mutableListOf<QualifiedContent>()
     // 收集必要的输入建立完成的classpath环境
-    val componentizationJarInput =
-            collectInputs(classPool, effectInputs, classPaths)
+    collectInputs(classPool, effectInputs, classPaths)
             ?: throw RuntimeException("没有查找到组件工具：$COMPONENTIZATION")
     // 收集注册信息，并转换相关类
     transformClasses(classPool, effectInputs)
     // 验证注册信息正确性
     checkRegisterValid(classPool)
-    if (!config.incremental) {
-      // 注入自动化注册逻辑，并重新打包
-      componentizationJarInput.apply {
-        repackageJar(classPool, this, getOutput(this),
-                listOf(transformComponentizationJar(classPool, this)))
-      }
+    if (!config.lazyModules) {
+      // 生成注册索引类，运行时库保持不变
+      generateComponentIndex(classPool)
     }
     // 释放类资源
     freeClassPoll(classPool, classPaths)
@@ -394,23 +409,40 @@ class ComponentScanner(private val project: Project): Transform() {
           ((methodInfo.getAttribute(AnnotationDefaultAttribute.tag)
               as AnnotationDefaultAttribute).defaultValue as BooleanMemberValue).value
     }
-    var hasChanged = false
+    var hasChanged = transformComponentCalls(classPool, ctClass)
+    if (config.inlineLazy) {
+      hasChanged = transformAutoWiredReads(classPool, ctClass, defaultMode) || hasChanged
+    }
+    val injector = findInjector(classPool, ctClass)
+    var injected = false
     ctClass.declaredFields.filter { it.hasAnnotation(ANNOTATION_AUTOWIRED) }.forEach {field ->
       if (DEBUG) println("\ttransformComponentInject: ${ctClass.name} -> ${field.name}")
       field.modifiers = field.modifiers or AccessFlag.TRANSIENT
-      val lazyMode = (field.fieldInfo.getAttribute(AnnotationsAttribute.visibleTag)
-              as? AnnotationsAttribute)?.let {attribute ->
-        attribute.getAnnotation(ANNOTATION_AUTOWIRED)?.let {annotation ->
-          (annotation.getMemberValue("lazy") as? BooleanMemberValue)?.value
-        }
-      } ?: defaultMode
+      hasChanged = true
+      val lazyMode = isLazyAutoWired(field, defaultMode)
+      if (isInlineAutoWired(field, lazyMode)) {
+        // 读取时解析，不再初始化
+        return@forEach
+      }
+      if (null != injector && isInjectable(classPool, field)) {
+        // 由注入类统一注入
+        injected = true
+        return@forEach
+      }
+      val getter = if (lazyMode) "getLazySafely" else "getSafely"
+      val accessor = findAccessor(classPool, field.type.name, getter)
       ctClass.removeField(field)
       ctClass.addField(field,
-          CtField.Initializer.byExpr(COMPONENTIZATION +
-                  ".${if (lazyMode) "getLazySafely" else "getSafely"}" +
-                  "(${field.type.name}.class)")
+          CtField.Initializer.byExpr(if (null != accessor) "${accessor.name}.${getter}()"
+                  else "${COMPONENTIZATION}.${getter}(${field.type.name}.class)")
       )
-      hasChanged = true
+    }
+    if (injected && null != injector) {
+      // 只在调用父类构造的构造器中注入，委托给this(...)的构造器由被委托者完成
+      ctClass.declaredConstructors.filter { it.callsSuper() }.forEach { constructor ->
+        constructor.insertBeforeBody("${injector.name}.inject(this);")
+      }
+      if (DEBUG) println("\ttransformComponentInject: ${ctClass.name} -> ${injector.name}")
     }
     if (hasChanged) {
       ctClass.freeze()
@@ -419,20 +451,273 @@ class ComponentScanner(private val project: Project): Transform() {
   }
 
   /**
-   * 转换Componentization所属jar资源
+   * 字段声明的延迟模式
+   */
+  private fun isLazyAutoWired(field: CtField, defaultMode: Boolean): Boolean {
+    return (field.fieldInfo.getAttribute(AnnotationsAttribute.visibleTag)
+            as? AnnotationsAttribute)?.let {attribute ->
+      attribute.getAnnotation(ANNOTATION_AUTOWIRED)?.let {annotation ->
+        (annotation.getMemberValue("lazy") as? BooleanMemberValue)?.value
+      }
+    } ?: defaultMode
+  }
+
+  /**
+   * 字段是否改写为读取时解析：内联模式下的延迟字段和所有静态字段，
+   * 静态字段不再在类初始化时解析；非强引用的单例会被释放重建，保留延迟代理
+   */
+  private fun isInlineAutoWired(field: CtField, lazyMode: Boolean): Boolean {
+    return config.inlineLazy
+            && (lazyMode || (field.modifiers and AccessFlag.STATIC) != 0)
+            && (field.modifiers and AccessFlag.FINAL) == 0
+            && isRetainedApi(field.type)
+  }
+
+  /**
+   * api的单例是否强引用持有，没有声明时为默认的强引用
+   */
+  private fun isRetainedApi(apiType: CtClass): Boolean {
+    val annotation = (apiType.classFile2.getAttribute(AnnotationsAttribute.visibleTag)
+            as? AnnotationsAttribute)?.getAnnotation(ANNOTATION_API) ?: return true
+    return (annotation.getMemberValue("retain") as? EnumMemberValue)?.value?.let {
+      it == "STRONG"
+    } ?: true
+  }
+
+  /**
+   * 将内联字段的读取改写为判空后解析并回写字段，不再创建延迟代理；
+   * 并发首次读取时可能重复解析，单例api解析结果相同，非单例api以最后一次写入为准
+   * @return 是否有读取被改写
    */
-  private fun transformComponentizationJar(classPool: ClassPool, jarInput: JarInput): CtClass {
-    println("transformComponentizationJar: ${jarInput.file.absolutePath}")
-    val Componentization = classPool.get(COMPONENTIZATION)
-    val registerBody = StringBuilder("{\n")
-    registers.forEach {
-      registerBody.append("register(${it.name}.class);\n")
-      println("\tinsert ComponentRegister: ${it.name}.class")
+  private fun transformAutoWiredReads(classPool: ClassPool, ctClass: CtClass,
+                                      defaultMode: Boolean): Boolean {
+    var hasChanged = false
+    ctClass.instrument(object: ExprEditor() {
+      override fun edit(access: FieldAccess) {
+        if (!access.isReader) {
+          return
+        }
+        val field = try {
+          access.field
+        } catch (e: Exception) {
+          return
+        }
+        if (!field.hasAnnotation(ANNOTATION_AUTOWIRED)
+                || !isInlineAutoWired(field, isLazyAutoWired(field, defaultMode))) {
+          return
+        }
+        val apiType = field.type.name
+        val accessor = findAccessor(classPool, apiType, "getSafely")
+        val resolver = if (null != accessor) "${accessor.name}.getSafely()"
+        else "(${apiType}) ${COMPONENTIZATION}.getSafely(${apiType}.class)"
+        val target = if (access.isStatic) field.declaringClass.name else "\$0"
+        access.replace("{ \$_ = \$proceed(\$\$); if (\$_ == null) " +
+                "{ \$_ = ${resolver}; ${target}.${field.name} = \$_; } }")
+        hasChanged = true
+        if (DEBUG) println("\ttransformAutoWiredReads: ${ctClass.name} -> ${field.name}")
+      }
+    })
+    return hasChanged
+  }
+
+  /**
+   * 查找编译期生成的字段注入类，与宿主类同包，嵌套类名以下划线连接
+   */
+  private fun findInjector(classPool: ClassPool, ctClass: CtClass): CtClass? {
+    val simpleName = ctClass.name.substring(ctClass.packageName?.let { it.length + 1 } ?: 0)
+    val injectorName = (ctClass.packageName?.let { "$it." } ?: "") +
+            simpleName.replace("$", "_") + INJECTOR_SUFFIX
+    return classPool.getOrNull(injectorName)
+  }
+
+  /**
+   * 字段是否由注入类注入，与注解处理器的规则保持一致：非私有、非静态、非final的字段，
+   * 类型是被@Api修饰的api接口，所在类是普通类并且它和所有外部类都不是私有的
+   */
+  private fun isInjectable(classPool: ClassPool, field: CtField): Boolean {
+    if (AccessFlag.isPrivate(field.modifiers)
+            || (field.modifiers and (AccessFlag.STATIC or AccessFlag.FINAL)) != 0) {
+      return false
+    }
+    val fieldType = field.type
+    if (!fieldType.isInterface || !fieldType.hasAnnotation(ANNOTATION_API)
+            || !fieldType.subtypeOf(classPool.get(API))) {
+      return false
+    }
+    val host = field.declaringClass
+    if (host.isInterface || host.isEnum || host.isAnnotation) {
+      return false
     }
-    registerBody.append("}")
-    (Componentization.classInitializer?: Componentization.makeClassInitializer())
-        .insertAfter(registerBody.toString())
-    return Componentization
+    // 嵌套类的访问标记来自InnerClasses属性，逐级检查外部类
+    return generateSequence(host) { it.declaringClass }.none { AccessFlag.isPrivate(it.modifiers) }
+  }
+
+  /**
+   * 将以class常量为参数的Componentization.get*调用改写为api直接访问类的静态调用，
+   * 原地替换[ldc, invokestatic]指令，不改变代码长度和跳转偏移
+   * @return 是否有调用被改写
+   */
+  private fun transformComponentCalls(classPool: ClassPool, ctClass: CtClass): Boolean {
+    if (ctClass.name.substringBefore("\$").endsWith(ACCESSOR_SUFFIX)) {
+      // 访问类自身需要通过Componentization获取
+      return false
+    }
+    val constPool = ctClass.classFile2.constPool
+    var hasChanged = false
+    ctClass.classFile2.methods.forEach method@{ method ->
+      val codeAttribute = (method as MethodInfo).codeAttribute ?: return@method
+      val jumpTargets = getJumpTargets(codeAttribute)
+      val iterator = codeAttribute.iterator()
+      var ldcPos = -1
+      var ldcClass: String? = null
+      while (iterator.hasNext()) {
+        val pos = iterator.next()
+        val opcode = iterator.byteAt(pos)
+        // 调用指令是跳转目标时参数不一定来自前一条ldc，例如三元表达式
+        if (opcode == Opcode.INVOKESTATIC && null != ldcClass && !jumpTargets.contains(pos)) {
+          getAccessorMethodref(classPool, constPool, iterator.u16bitAt(pos + 1), ldcClass)
+                  ?.let { methodref ->
+            if (!hasChanged) {
+              // 标记为已修改
+              ctClass.classFile
+            }
+            iterator.writeByte(Opcode.INVOKESTATIC, ldcPos)
+            iterator.write16bit(methodref, ldcPos + 1)
+            for (nopPos in ldcPos + 3 until pos + 3) {
+              iterator.writeByte(Opcode.NOP, nopPos)
+            }
+            hasChanged = true
+            if (DEBUG) println("\ttransformComponentCalls: ${ctClass.name}.${method.name} -> ${ldcClass}")
+          }
+        }
+        val constIndex = when (opcode) {
+          Opcode.LDC -> iterator.byteAt(pos + 1)
+          Opcode.LDC_W -> iterator.u16bitAt(pos + 1)
+          else -> 0
+        }
+        ldcClass = if (constIndex > 0 && constPool.getTag(constIndex) == ConstPool.CONST_Class)
+          constPool.getClassInfo(constIndex) else null
+        ldcPos = pos
+      }
+    }
+    return hasChanged
+  }
+
+  /**
+   * 查找Componentization.get*调用对应的api直接访问方法
+   * @return 访问方法的常量池索引，不能改写时返回null
+   */
+  private fun getAccessorMethodref(classPool: ClassPool, constPool: ConstPool,
+                                   methodref: Int, apiType: String): Int? {
+    if (constPool.getMethodrefClassName(methodref) != COMPONENTIZATION
+            || constPool.getMethodrefType(methodref) != "(Ljava/lang/Class;)L${API.replace(".", "/")};") {
+      return null
+    }
+    val methodName = constPool.getMethodrefName(methodref)
+    val accessor = findAccessor(classPool, apiType, methodName) ?: return null
+    return constPool.addMethodrefInfo(constPool.addClassInfo(accessor.name),
+            methodName, "()L${apiType.replace(".", "/")};")
+  }
+
+  /**
+   * 查找编译期为api生成的直接访问类
+   * @param apiType api接口类名
+   * @param methodName Componentization中对应的获取方法
+   * @return 访问类，不存在或者没有对应的方法时返回null
+   */
+  private fun findAccessor(classPool: ClassPool, apiType: String, methodName: String): CtClass? {
+    if (!ACCESSOR_METHODS.contains(methodName)) {
+      return null
+    }
+    // 访问类与api同包，嵌套接口以下划线连接外部类名，与注解处理器保持一致
+    val accessor = classPool.getOrNull(apiType.replace("\$", "_") + ACCESSOR_SUFFIX) ?: return null
+    val descriptor = "()L${apiType.replace(".", "/")};"
+    return if (accessor.declaredMethods.any { it.name == methodName && it.signature == descriptor })
+      accessor else null
+  }
+
+  /**
+   * 方法中所有的跳转目标位置，包括异常处理入口
+   */
+  private fun getJumpTargets(codeAttribute: CodeAttribute): Set<Int> {
+    val targets = mutableSetOf<Int>()
+    val exceptionTable = codeAttribute.exceptionTable
+    for (i in 0 until exceptionTable.size()) {
+      targets.add(exceptionTable.handlerPc(i))
+    }
+    val iterator = codeAttribute.iterator()
+    while (iterator.hasNext()) {
+      val pos = iterator.next()
+      when (val opcode = iterator.byteAt(pos)) {
+        in Opcode.IFEQ..Opcode.JSR, Opcode.IFNULL, Opcode.IFNONNULL ->
+          targets.add(pos + iterator.s16bitAt(pos + 1))
+        Opcode.GOTO_W, Opcode.JSR_W ->
+          targets.add(pos + iterator.s32bitAt(pos + 1))
+        Opcode.TABLESWITCH, Opcode.LOOKUPSWITCH -> {
+          // 操作数按4字节对齐
+          val base = (pos and 3.inv()) + 4
+          targets.add(pos + iterator.s32bitAt(base))
+          if (opcode == Opcode.TABLESWITCH) {
+            val low = iterator.s32bitAt(base + 4)
+            val high = iterator.s32bitAt(base + 8)
+            for (i in 0..(high - low)) {
+              targets.add(pos + iterator.s32bitAt(base + 12 + i * 4))
+            }
+          } else {
+            val pairs = iterator.s32bitAt(base + 4)
+            for (i in 0 until pairs) {
+              targets.add(pos + iterator.s32bitAt(base + 12 + i * 8))
+            }
+          }
+        }
+      }
+    }
+    return targets
+  }
+
+  /**
+   * 生成注册索引类，以class常量列出启动时需要载入的模块注册器，运行时只查找一次；
+   * 有api索引的模块仍然在其中的api首次请求时载入，不进入索引类；
+   * 增量模式下子模块不在转换范围，从注册属性文件中补充
+   */
+  private fun generateComponentIndex(classPool: ClassPool) {
+    val registerNames = sortedSetOf<String>()
+    registers.forEach { registerNames.add(it.name) }
+    val onDemandNames = mutableSetOf<String>()
+    project.rootProject.file(config.resourcesDir).resolve(REGISTER_FILE_NAME).let { registerFile ->
+      if (registerFile.exists()) {
+        val properties = Properties().apply {
+          registerFile.inputStream().use { load(it) }
+        }
+        properties.getModuleRegisters().forEach { (module, moduleRegisters) ->
+          if (properties.isOnDemandModule(module)) {
+            onDemandNames.addAll(moduleRegisters)
+          } else {
+            registerNames.addAll(moduleRegisters)
+          }
+        }
+      }
+    }
+    // 扫描到的注册器属于按需载入的模块时同样移除
+    registerNames.removeAll(onDemandNames)
+    val literals = registerNames.filter { name ->
+      (null != classPool.getOrNull(name)).also { found ->
+        if (!found) println("\tskip ComponentRegister: $name not found")
+      }
+    }.map { "${it}.class" }
+    literals.forEach { println("\tindex ComponentRegister: $it") }
+    val indexClass = classPool.makeClass(COMPONENT_INDEX_IMPL).apply {
+      addInterface(classPool.get(COMPONENT_INDEX))
+      addConstructor(CtNewConstructor.defaultConstructor(this))
+      addMethod(CtNewMethod.make("public Class[] getRegisters() { return " +
+              (if (literals.isEmpty()) "new Class[0]"
+              else literals.joinToString(", ", "new Class[]{", "}")) + "; }", this))
+    }
+    val output = outputProvider.getContentLocation(COMPONENT_INDEX,
+            mutableSetOf<QualifiedContent.ContentType>(QualifiedContent.DefaultContentType.CLASSES),
+            mutableSetOf(QualifiedContent.Scope.PROJECT), Format.DIRECTORY)
+    indexClass.writeFile(output.absolutePath)
+    println("generateComponentIndex: ${indexClass.name} -> ${output.absolutePath}")
   }
 
   /**
@@ -470,6 +755,7 @@ class ComponentScanner(private val project: Project): Transform() {
    */
   private fun checkRegisterValid(classPool: ClassPool) {
     val registerMetas = mutableMapOf<String, String>()
+    val serviceDependencies = mutableMapOf<String, List<String>>()
     registers.forEach {register ->
       if (!register.hasAnnotation(ANNOTATION_META)) {
         throw IllegalArgumentException("${register.name}缺失@${ANNOTATION_META}注解描述")
@@ -480,7 +766,16 @@ class ComponentScanner(private val project: Project): Transform() {
         val apiTypes = (getMemberValue("api") as ArrayMemberValue).value.map {
           (it as StringMemberValue).value
         }
+        serviceDependencies[serviceType] = (getMemberValue("dependency") as? ArrayMemberValue)
+                ?.value?.map { (it as StringMemberValue).value } ?: emptyList()
+        val multipleTypes = (getMemberValue("multiple") as? ArrayMemberValue)
+                ?.value?.map { (it as StringMemberValue).value } ?: emptyList()
         apiTypes.forEach {apiType ->
+          if (multipleTypes.contains(apiType)) {
+            // 多实现接口允许多个service
+            registerMetas.putIfAbsent(apiType, serviceType)
+            return@forEach
+          }
           registerMetas.put(apiType, serviceType)?.let {lastService ->
             throw IllegalArgumentException(
                     "接口 [${apiType}] 发现重复实现: \n" +
@@ -489,6 +784,34 @@ class ComponentScanner(private val project: Project): Transform() {
         }
       }
     }
+    checkDependencyCycle(registerMetas, serviceDependencies)
+  }
+
+  /**
+   * 检查service之间的构造依赖是否存在循环，循环依赖在运行时会导致单例构造失败
+   * @param registerMetas api到service的映射
+   * @param serviceDependencies service到构造依赖api的映射
+   */
+  private fun checkDependencyCycle(registerMetas: Map<String, String>,
+                                   serviceDependencies: Map<String, List<String>>) {
+    // 未记录: 未访问，1: 访问中，2: 已完成
+    val states = mutableMapOf<String, Int>()
+    val path = mutableListOf<String>()
+    fun visit(service: String) {
+      when (states[service]) {
+        2 -> return
+        1 -> throw IllegalArgumentException("组件构造依赖存在循环，请对其中的注入使用延迟初始化: \n" +
+                (path.subList(path.indexOf(service), path.size) + service).joinToString(" -> "))
+      }
+      states[service] = 1
+      path.add(service)
+      serviceDependencies[service]?.forEach { apiType ->
+        registerMetas[apiType]?.let { visit(it) }
+      }
+      path.removeAt(path.size - 1)
+      states[service] = 2
+    }
+    serviceDependencies.keys.forEach { visit(it) }
   }
 
   private fun freeClassPoll(classPool: ClassPool, classPaths: List<ClassPath>) {
@@ -24,6 +24,14 @@ public class ComponentizationConfig {
    * 是否增量模式
    */
   boolean incremental = false;
+  /**
+   * 是否内联延迟注入，延迟和静态的{@code AutoWired}字段改写为首次读取时解析，不再创建延迟代理
+   */
+  boolean inlineLazy = false;
+  /**
+   * 是否不生成注册索引类，开启时启动模块的注册类也按类名反射载入；有api索引的模块始终在其中的api首次请求时载入
+   */
+  boolean lazyModules = false;
   /**
    * 应用模块名称，预设置项，方面某些前置配置
    */
@@ -101,6 +109,22 @@ public class ComponentizationConfig {
     this.incremental = incremental;
   }
 
+  public boolean isInlineLazy() {
+    return inlineLazy;
+  }
+
+  public void setInlineLazy(boolean inlineLazy) {
+    this.inlineLazy = inlineLazy;
+  }
+
+  public boolean isLazyModules() {
+    return lazyModules;
+  }
+
+  public void setLazyModules(boolean lazyModules) {
+    this.lazyModules = lazyModules;
+  }
+
   public String getResourcesDir() {
     return resourcesDir;
   }
@@ -126,6 +150,8 @@ public class ComponentizationConfig {
     return "ComponentizationConfig{" +
             "debugMode=" + debugMode +
             ", incremental=" + incremental +
+            ", inlineLazy=" + inlineLazy +
+            ", lazyModules=" + lazyModules +
             ", resourcesDir=" + resourcesDir +
             ", applicationModule=" + applicationModule +
             ", includeModules=" + Arrays.toString(includeModules) +
@@ -1,9 +1,11 @@
 package com.bhb.android.plugin.componentization
 
+import java.io.DataOutputStream
 import java.io.File
 import java.nio.ByteBuffer
 import java.nio.channels.FileChannel
 import java.security.MessageDigest
+import java.util.*
 
 internal fun fileMD5(input: File, upperCase: Boolean): String {
   input.inputStream().use {
@@ -14,6 +16,82 @@ internal fun fileMD5(input: File, upperCase: Boolean): String {
   }
 }
 
+private const val REGISTRY_MAGIC = 0x434D5052
+private const val REGISTRY_VERSION = 1
+private const val REGISTRY_FLAG_INDEXED = 1
+private const val REGISTRY_FLAG_EAGER = 1 shl 1
+private const val REGISTRY_APIS_SUFFIX = "@apis"
+private const val REGISTRY_EAGER_SUFFIX = "@eager"
+
+private fun splitRegistryValue(value: String?): List<String> {
+  return value?.split(",\\n*".toRegex())?.filter { it.isNotEmpty() } ?: emptyList()
+}
+
+/**
+ * 注册属性中各模块的注册类，键为模块名，按模块名排序
+ */
+internal fun Properties.getModuleRegisters(): SortedMap<String, List<String>> {
+  return stringPropertyNames()
+      .filter { !it.endsWith(REGISTRY_APIS_SUFFIX) && !it.endsWith(REGISTRY_EAGER_SUFFIX) }
+      .associateWith { splitRegistryValue(getProperty(it)) }
+      .toSortedMap()
+}
+
+/**
+ * 模块是否按需载入：有api索引并且不包含提前初始化的api，与运行时ModuleIndex.Module.isBootstrap相反
+ */
+internal fun Properties.isOnDemandModule(module: String): Boolean {
+  return null != getProperty(module + REGISTRY_APIS_SUFFIX) &&
+      getProperty(module + REGISTRY_EAGER_SUFFIX)?.toBoolean() != true
+}
+
+/**
+ * 将注册属性转换为二进制注册表，格式与运行时RegistryFile保持一致：
+ * 名称表、模块分片、注册类、按名称hash排序的api索引，最后是名称数据，整数均为大端序
+ */
+internal fun writeRegistryFile(properties: Properties, output: File) {
+  val names = linkedMapOf<String, Int>()
+  val intern = fun (name: String): Int = names.getOrPut(name) { names.size }
+  val moduleEntries = mutableListOf<IntArray>()
+  val registers = mutableListOf<Int>()
+  val apis = mutableListOf<IntArray>()
+  properties.getModuleRegisters().entries.forEachIndexed { index, (module, moduleRegisters) ->
+    val moduleApis = properties.getProperty(module + REGISTRY_APIS_SUFFIX)
+    var flags = if (null != moduleApis) REGISTRY_FLAG_INDEXED else 0
+    if (properties.getProperty(module + REGISTRY_EAGER_SUFFIX)?.toBoolean() == true) {
+      flags = flags or REGISTRY_FLAG_EAGER
+    }
+    moduleEntries.add(intArrayOf(intern(module), flags, registers.size, moduleRegisters.size))
+    moduleRegisters.forEach { registers.add(intern(it)) }
+    splitRegistryValue(moduleApis).forEach { api ->
+      apis.add(intArrayOf(api.hashCode(), intern(api), index))
+    }
+  }
+  apis.sortWith(compareBy({ it[0] }, { it[1] }))
+  val nameBytes = names.keys.map { it.toByteArray(Charsets.UTF_8) }
+  var offset = 4 * 2 + 4 + names.size * 4 + 4 + moduleEntries.size * 4 * 4 +
+      4 + registers.size * 4 + 4 + apis.size * 3 * 4
+  DataOutputStream(output.outputStream().buffered()).use { out ->
+    out.writeInt(REGISTRY_MAGIC)
+    out.writeInt(REGISTRY_VERSION)
+    out.writeInt(names.size)
+    nameBytes.forEach {
+      out.writeInt(offset)
+      offset += 2 + it.size
+    }
+    out.writeInt(moduleEntries.size)
+    moduleEntries.forEach { entry -> entry.forEach { out.writeInt(it) } }
+    out.writeInt(registers.size)
+    registers.forEach { out.writeInt(it) }
+    out.writeInt(apis.size)
+    apis.forEach { entry -> entry.forEach { out.writeInt(it) } }
+    nameBytes.forEach {
+      out.writeShort(it.size)
+      out.write(it)
+    }
+  }
+}
+
 internal fun bytes2Hex(input: ByteArray, upperCase: Boolean): String {
   val sb = StringBuilder()
   var hex: String